@@ -0,0 +1,126 @@
+package com.ci.jlox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// Sampled allocation profile of Lox objects by the AST node that allocates
+// them: a Stmt.Function for its closures and call environments, an
+// Expr.Call for the instances a class call creates, a block for its
+// environment and a `+` for the strings it builds. Roughly one allocation
+// in `interval` is sampled and weighted by the gap since the previous one,
+// and only sampled allocations are measured, by the thread's allocated-bytes
+// counter around them. Each thread keeps its own countdown; the rows are
+// shared, and since only sampled allocations touch them, a lock per row
+// costs little.
+final class Allocations {
+    private record Site(Object node, String type) {
+    }
+
+    private static final class Row {
+        long estimate;
+        long measured;
+        long bytes;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final int REPORTED_SITES = 20;
+
+    private final int interval;
+    // Shared by every thread.
+    private final Map<Site, Row> rows;
+    private long weight;
+    private long countdown;
+
+    Allocations(final int interval) {
+        this.interval = interval;
+        this.rows = new ConcurrentHashMap<>();
+        weight = countdown = nextGap();
+    }
+
+    private Allocations(final Allocations parent) {
+        this.interval = parent.interval;
+        this.rows = parent.rows;
+        weight = countdown = nextGap();
+    }
+
+    Allocations fork() {
+        return new Allocations(this);
+    }
+
+    // Averages `interval` without always landing on the same allocations.
+    private long nextGap() {
+        return (interval <= 1) ? 1 : ThreadLocalRandom.current().nextLong(1, 2L * interval);
+    }
+
+    <T> T track(final Object node, final String type, final Supplier<T> allocation) {
+        if (--countdown > 0) {
+            return allocation.get();
+        }
+        final long before = THREADS.getCurrentThreadAllocatedBytes();
+        final T value = allocation.get();
+        final long after = THREADS.getCurrentThreadAllocatedBytes();
+        final Row row = rows.computeIfAbsent(new Site(node, type), s -> new Row());
+        synchronized (row) {
+            row.estimate += weight;
+            // Virtual threads don't report allocated bytes.
+            if (before >= 0 && after >= before) {
+                row.measured++;
+                row.bytes += after - before;
+            }
+        }
+        weight = countdown = nextGap();
+        return value;
+    }
+
+    void report(final PrintStream out) {
+        // A copy of each row, taken under its lock, so the sort sees fixed values.
+        final Map<Site, Row> copies = new HashMap<>();
+        rows.forEach((site, row) -> {
+            final Row copy = new Row();
+            synchronized (row) {
+                copy.estimate = row.estimate;
+                copy.measured = row.measured;
+                copy.bytes = row.bytes;
+            }
+            copies.put(site, copy);
+        });
+        final List<Map.Entry<Site, Row>> sites = new ArrayList<>(copies.entrySet());
+        sites.sort((a, b) -> Long.compare(bytes(b.getValue()), bytes(a.getValue())));
+        out.printf("== Allocations by site (top %d of %d, sampled ~1/%d) ==%n",
+                Math.min(REPORTED_SITES, sites.size()), sites.size(), interval);
+        out.printf("%-16s %6s %-12s %12s %14s%n", "site", "line", "type", "count", "bytes");
+        for (final var entry : sites.subList(0, Math.min(REPORTED_SITES, sites.size()))) {
+            final Site site = entry.getKey();
+            final Row row = entry.getValue();
+            out.printf("%-16s %6s %-12s %12d %14s%n", kind(site.node), line(site.node),
+                    site.type, row.estimate, (row.measured == 0) ? "?" : Long.toString(bytes(row)));
+        }
+        out.flush();
+    }
+
+    // Measured bytes scaled up to the estimated count.
+    private static long bytes(final Row row) {
+        return (row.measured == 0) ? 0 : row.bytes * row.estimate / row.measured;
+    }
+
+    private static String kind(final Object node) {
+        return switch (node) {
+            case Stmt.Function function -> "fun " + function.name.lexeme;
+            case null -> "<native>";
+            default -> node.getClass().getSimpleName();
+        };
+    }
+
+    private static String line(final Object node) {
+        final int line = (node == null) ? -1 : Profile.line(node);
+        return (line < 0) ? "-" : Integer.toString(line);
+    }
+}
@@ -46,6 +46,16 @@ public class AstPrinter implements Expr.Visitor<String> {
         return "";
     }
 
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "";
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return "";
+    }
+
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
         return paranthesize(expr.operator.lexeme, expr.right);
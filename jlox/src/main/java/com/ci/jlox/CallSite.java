@@ -0,0 +1,55 @@
+package com.ci.jlox;
+
+// Per-call-site state every Expr.Call makes when it is constructed.
+//
+// The target is the last callable that passed the site's callable and arity
+// checks. Both only depend on the callee and the site's fixed argument
+// count, so an identity match lets a monomorphic site like `fib(n - 1)`
+// skip them. When the callee is a small function the target also carries
+// its inlined body, which the same identity match guards.
+//
+// For the `obj.method(args)` shape it also caches the method last found for
+// the receiver's class, so a monomorphic site skips the method table lookup
+// and never materializes a LoxBoundMethod. The class and method are
+// published as one immutable entry, so racing tasks can't pair a class with
+// another class's method.
+final class CallSite {
+    private record Target(LoxCallable callee, Inline inline) {
+    }
+
+    private record Method(LoxClass klass, LoxFunction function) {
+    }
+
+    final boolean invoke;
+    private Target target;
+    private Method method;
+
+    CallSite(final boolean invoke) {
+        this.invoke = invoke;
+    }
+
+    // The callee itself when it already passed this site's checks.
+    LoxCallable checked(final Object callee) {
+        final Target cached = target;
+        return (cached != null && cached.callee == callee) ? cached.callee : null;
+    }
+
+    Inline inline(final LoxCallable callee) {
+        final Target cached = target;
+        return (cached != null && cached.callee == callee) ? cached.inline : null;
+    }
+
+    void checked(final LoxCallable callee, final Inline inline) {
+        target = new Target(callee, inline);
+    }
+
+    LoxFunction method(final LoxClass klass, final String name) {
+        final Method cached = method;
+        if (cached != null && cached.klass == klass) {
+            return cached.function;
+        }
+        final LoxFunction function = klass.findMethod(name);
+        method = new Method(klass, function);
+        return function;
+    }
+}
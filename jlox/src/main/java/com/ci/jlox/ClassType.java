@@ -0,0 +1,7 @@
+package com.ci.jlox;
+
+enum ClassType {
+    NONE,
+    CLASS,
+    SUBCLASS,
+}
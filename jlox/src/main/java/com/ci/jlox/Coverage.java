@@ -0,0 +1,105 @@
+package com.ci.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Statement and branch coverage. A hit sets the statement's bit, the parser
+// having numbered every statement; an if or while sets one of two branch
+// bits per outcome. Each thread sets bits in its own Coverage and write()
+// ORs them together.
+final class Coverage {
+    private final Queue<Coverage> threads;
+    // Top-level statements of every script run, to find what never ran.
+    private final List<Stmt> program;
+    private final BitSet statements = new BitSet();
+    // Bit 2 * id for the then branch or a loop iteration, 2 * id + 1 for the
+    // else branch (taken or not) or the loop exit.
+    private final BitSet branches = new BitSet();
+
+    Coverage() {
+        threads = new ConcurrentLinkedQueue<>();
+        program = new ArrayList<>();
+        threads.add(this);
+    }
+
+    private Coverage(final Coverage parent) {
+        threads = parent.threads;
+        program = parent.program;
+        threads.add(this);
+    }
+
+    Coverage fork() {
+        return new Coverage(this);
+    }
+
+    void add(final List<Stmt> statements) {
+        program.addAll(statements);
+    }
+
+    void hit(final Stmt stmt) {
+        if (stmt.id >= 0) {
+            statements.set(stmt.id);
+        }
+    }
+
+    void branch(final Stmt stmt, final boolean taken) {
+        if (stmt.id >= 0) {
+            branches.set(2 * stmt.id + (taken ? 0 : 1));
+        }
+    }
+
+    // Writes an LCOV tracefile with `source` as the only source file.
+    void write(final Path path, final String source) throws IOException {
+        final BitSet hit = new BitSet();
+        final BitSet taken = new BitSet();
+        for (final Coverage thread : threads) {
+            hit.or(thread.statements);
+            taken.or(thread.branches);
+        }
+        final List<Stmt> all = Statements.all(program);
+
+        final Map<Integer, Boolean> lines = new TreeMap<>();
+        try (var out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println("TN:");
+            out.println("SF:" + source);
+            int found = 0;
+            int covered = 0;
+            for (final Stmt stmt : all) {
+                // A block's line is just its brace.
+                if (!(stmt instanceof Stmt.Block)) {
+                    lines.merge(stmt.line, hit.get(stmt.id), Boolean::logicalOr);
+                }
+                if (!(stmt instanceof Stmt.If) && !(stmt instanceof Stmt.While)) {
+                    continue;
+                }
+                for (int branch = 0; branch < 2; branch++) {
+                    final boolean wasTaken = taken.get(2 * stmt.id + branch);
+                    out.println("BRDA:" + stmt.line + ',' + stmt.id + ',' + branch + ',' +
+                            (hit.get(stmt.id) ? (wasTaken ? "1" : "0") : "-"));
+                    found++;
+                    covered += wasTaken ? 1 : 0;
+                }
+            }
+            out.println("BRF:" + found);
+            out.println("BRH:" + covered);
+            int linesHit = 0;
+            for (final var line : lines.entrySet()) {
+                out.println("DA:" + line.getKey() + ',' + (line.getValue() ? 1 : 0));
+                linesHit += line.getValue() ? 1 : 0;
+            }
+            out.println("LF:" + lines.size());
+            out.println("LH:" + linesHit);
+            out.println("end_of_record");
+        }
+    }
+}
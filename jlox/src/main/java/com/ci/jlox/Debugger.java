@@ -0,0 +1,214 @@
+package com.ci.jlox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// A line debugger driven by commands on stdin. Breakpoints are a flag on
+// the statements of a line, so only statements pay for them, and only while
+// a debugger is attached at all. Tasks and generator bodies run on their
+// own interpreters, which the debugger doesn't follow.
+final class Debugger {
+    private enum Mode { RUN, STEP, NEXT, OUT }
+
+    private static final String HELP = """
+            b <line>  set a breakpoint       d <line>  delete a breakpoint
+            c         continue               s         step into calls
+            n         step over calls        o         step out of this call
+            p <name>  print a variable       e         print the scope chain
+            w         where am I             q         quit""";
+
+    private final Interpreter interpreter;
+    private final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    private final PrintStream err = System.err;
+    private final Set<Integer> lines = new TreeSet<>();
+    private final List<Stmt> statements = new ArrayList<>();
+    private Mode mode;
+    // Call depth in the tree walker; the explicit stack counts its own frames.
+    private int depth;
+    private int stopDepth;
+    private int stopLine = -1;
+    // The line last run and the ids of the statements run on it since
+    // execution got there, so a line with several statements stops once per
+    // pass over it, and again when a loop on that line comes back to one of
+    // them.
+    private int lastLine = -1;
+    private final BitSet onLine = new BitSet();
+
+    // An empty `lines` stops before the first statement.
+    Debugger(final Interpreter interpreter, final Set<Integer> lines) {
+        this.interpreter = interpreter;
+        this.lines.addAll(lines);
+        mode = lines.isEmpty() ? Mode.STEP : Mode.RUN;
+    }
+
+    void add(final List<Stmt> program) {
+        for (final Stmt stmt : Statements.all(program)) {
+            statements.add(stmt);
+            stmt.breakpoint = lines.contains(stmt.line);
+        }
+    }
+
+    void enter() {
+        depth++;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    private int depth() {
+        return (interpreter.machine != null) ? interpreter.machine.frames() : depth;
+    }
+
+    void statement(final Stmt stmt) {
+        // A block's line is just its brace; stop at what it holds instead.
+        if (stmt.id < 0 || stmt instanceof Stmt.Block) {
+            return;
+        }
+        final int line = stmt.line;
+        final boolean newPass = line != lastLine || onLine.get(stmt.id);
+        if (newPass) {
+            lastLine = line;
+            onLine.clear();
+        }
+        onLine.set(stmt.id);
+        final boolean stop = switch (mode) {
+            case RUN -> stmt.breakpoint && newPass;
+            case STEP -> line != stopLine || depth() != stopDepth;
+            case NEXT -> depth() < stopDepth || depth() == stopDepth && line != stopLine;
+            case OUT -> depth() < stopDepth;
+        };
+        if (stop) {
+            pause(stmt);
+        }
+    }
+
+    private void pause(final Stmt stmt) {
+        interpreter.flush();
+        err.println("(debug) stopped at line " + stmt.line + ", depth " + depth());
+        while (true) {
+            err.print("(debug) ");
+            err.flush();
+            String command;
+            try {
+                command = in.readLine();
+            } catch (IOException e) {
+                command = null;
+            }
+            if (command == null) {
+                // No one left to drive us; run to the end.
+                clear();
+                mode = Mode.RUN;
+                return;
+            }
+            final String[] words = command.trim().split("\\s+", 2);
+            final String arg = (words.length > 1) ? words[1] : "";
+            switch (words[0]) {
+                case "b" -> breakpoint(arg, true);
+                case "d" -> breakpoint(arg, false);
+                case "c" -> {
+                    resume(stmt, Mode.RUN);
+                    return;
+                }
+                case "s" -> {
+                    resume(stmt, Mode.STEP);
+                    return;
+                }
+                case "n" -> {
+                    resume(stmt, Mode.NEXT);
+                    return;
+                }
+                case "o" -> {
+                    resume(stmt, Mode.OUT);
+                    return;
+                }
+                case "p" -> printVariable(arg);
+                case "e" -> printScopes();
+                case "w" -> err.println("line " + stmt.line + ", depth " + depth() +
+                        ", breakpoints " + lines);
+                case "q" -> {
+                    interpreter.flush();
+                    System.exit(0);
+                }
+                case "" -> {
+                }
+                default -> err.println(HELP);
+            }
+        }
+    }
+
+    private void resume(final Stmt stmt, final Mode mode) {
+        this.mode = mode;
+        stopLine = stmt.line;
+        stopDepth = depth();
+    }
+
+    private void breakpoint(final String arg, final boolean set) {
+        final int line;
+        try {
+            line = Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            err.println("Expected a line number.");
+            return;
+        }
+        if (set) {
+            lines.add(line);
+        } else {
+            lines.remove(line);
+        }
+        boolean found = false;
+        for (final Stmt stmt : statements) {
+            if (stmt.line == line) {
+                stmt.breakpoint = set;
+                found = true;
+            }
+        }
+        if (set && !found) {
+            err.println("No statement starts on line " + line + " yet.");
+        }
+    }
+
+    private void clear() {
+        lines.clear();
+        for (final Stmt stmt : statements) {
+            stmt.breakpoint = false;
+        }
+    }
+
+    private void printVariable(final String name) {
+        for (Environment env = interpreter.environment; env != null; env = env.enclosing) {
+            final Map<String, Object> bindings = env.bindings();
+            if (bindings.containsKey(name)) {
+                err.println(name + " = " + Interpreter.stringify(bindings.get(name)));
+                return;
+            }
+        }
+        err.println("Undefined variable '" + name + "'.");
+    }
+
+    // Innermost scope first; globals last and without the natives' values.
+    private void printScopes() {
+        int level = 0;
+        for (Environment env = interpreter.environment; env != null; env = env.enclosing) {
+            final var text = new StringBuilder();
+            for (final var binding : env.bindings().entrySet()) {
+                if (!text.isEmpty()) {
+                    text.append(", ");
+                }
+                text.append(binding.getKey());
+                if (env.enclosing != null || !(binding.getValue() instanceof LoxCallable)) {
+                    text.append(" = ").append(Interpreter.stringify(binding.getValue()));
+                }
+            }
+            err.println("#" + level++ + (env.enclosing == null ? " globals" : "") + " {" + text + "}");
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package com.ci.jlox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class Environment {
+    private static final Object UNDEFINED = new Object();
+    private static final VarHandle VALUES;
+
+    static {
+        try {
+            VALUES = MethodHandles.lookup().findVarHandle(Environment.class, "values", Map.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // A plain HashMap until tasks start; see shared().
+    private Map<String, Object> values = LoxTask.started ? SharedValues.create() : new HashMap<>();
 
     Environment() {
         enclosing = null;
@@ -16,8 +31,9 @@ public class Environment {
     }
 
     Object get(final Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
+        final Object value = lookup(name.lexeme);
+        if (value != UNDEFINED) {
+            return value;
         }
         if (enclosing != null) {
             return enclosing.get(name);
@@ -27,11 +43,15 @@ public class Environment {
     }
 
     public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+        final Environment env = ancestor(distance);
+        if (LoxTask.started) {
+            return SharedValues.unmask(env.shared().get(name));
+        }
+        return env.values.get(name);
     }
 
     void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        ancestor(distance).define(name.lexeme, value);
     }
 
     Environment ancestor(int distance) {
@@ -43,13 +63,27 @@ public class Environment {
         return env;
     }
 
+    // A sorted copy of this scope's own variables, for the debugger and images.
+    Map<String, Object> bindings() {
+        final Map<String, Object> copy = new TreeMap<>();
+        if (LoxTask.started) {
+            shared().forEach((name, value) -> copy.put(name, SharedValues.unmask(value)));
+        } else {
+            copy.putAll(values);
+        }
+        return copy;
+    }
+
     public void define(final String name, final Object object) {
+        if (LoxTask.started) {
+            shared().put(name, SharedValues.mask(object));
+            return;
+        }
         values.put(name, object);
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        if (replace(name.lexeme, value)) {
             return;
         }
         if (enclosing != null) {
@@ -59,4 +93,39 @@ public class Environment {
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
+
+    private Object lookup(final String name) {
+        if (LoxTask.started) {
+            return SharedValues.unmask(shared().getOrDefault(name, UNDEFINED));
+        }
+        return values.getOrDefault(name, UNDEFINED);
+    }
+
+    private boolean replace(final String name, final Object value) {
+        if (LoxTask.started) {
+            return shared().replace(name, SharedValues.mask(value)) != null;
+        }
+        if (values.containsKey(name)) {
+            values.put(name, value);
+            return true;
+        }
+        return false;
+    }
+
+    // Environments created before the first task still hold a HashMap. The
+    // first access after that swaps in a concurrent copy; only that swap
+    // takes a lock.
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> shared() {
+        final var current = (Map<String, Object>) VALUES.getAcquire(this);
+        if (SharedValues.isShared(current)) {
+            return current;
+        }
+        synchronized (this) {
+            if (!SharedValues.isShared(values)) {
+                VALUES.setRelease(this, SharedValues.copyOf(values));
+            }
+            return values;
+        }
+    }
 }
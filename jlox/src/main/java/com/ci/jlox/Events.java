@@ -0,0 +1,87 @@
+package com.ci.jlox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events for the pipeline stages and slow Lox calls. They
+// cost next to nothing unless a recording enables them; jlox.jfc next to the
+// pom does, and is where the call threshold is tuned.
+final class Events {
+    private Events() {
+    }
+
+    @Name("jlox.Run")
+    @Label("Lox Run")
+    @Category({"Lox", "Pipeline"})
+    @Description("One script or prompt line, from source to last statement")
+    @StackTrace(false)
+    static final class Run extends Event {
+        @Label("Source Length")
+        int sourceLength;
+        @Label("Tokens")
+        int tokens;
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("jlox.Scan")
+    @Label("Lox Scan")
+    @Category({"Lox", "Pipeline"})
+    @StackTrace(false)
+    static final class Scan extends Event {
+        @Label("Source Length")
+        int sourceLength;
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("jlox.Parse")
+    @Label("Lox Parse")
+    @Category({"Lox", "Pipeline"})
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Tokens")
+        int tokens;
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("jlox.Resolve")
+    @Label("Lox Resolve")
+    @Category({"Lox", "Pipeline"})
+    @StackTrace(false)
+    static final class Resolve extends Event {
+        @Label("Statements")
+        int statements;
+        @Label("Function Bodies")
+        int bodies;
+    }
+
+    @Name("jlox.Execute")
+    @Label("Lox Execute")
+    @Category({"Lox", "Pipeline"})
+    @StackTrace(false)
+    static final class Execute extends Event {
+        @Label("Statements")
+        int statements;
+    }
+
+    // Only calls slower than the threshold are recorded. The explicit-stack
+    // mode runs calls as frames rather than Java calls, so it records none.
+    @Name("jlox.Call")
+    @Label("Lox Function Call")
+    @Category({"Lox", "Calls"})
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static final class Call extends Event {
+        @Label("Function")
+        String function;
+        @Label("Line")
+        int line;
+    }
+}
@@ -12,6 +12,8 @@ abstract class Expr {
     R visitLiteralExpr(Literal expr);
     R visitLogicalExpr(Logical expr);
     R visitSetExpr(Set expr);
+    R visitSuperExpr(Super expr);
+    R visitThisExpr(This expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
   }
@@ -50,6 +52,7 @@ abstract class Expr {
       this.callee = callee;
       this.paren = paren;
       this.arguments = arguments;
+      this.site = new CallSite(callee instanceof Expr.Get);
     }
 
     @Override
@@ -60,6 +63,7 @@ abstract class Expr {
     final Expr callee;
     final Token paren;
     final List<Expr> arguments;
+    final CallSite site;
   }
   public static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -131,6 +135,32 @@ abstract class Expr {
     final Token name;
     final Expr value;
   }
+  public static class Super extends Expr {
+    Super(Token keyword, Token method) {
+      this.keyword = keyword;
+      this.method = method;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSuperExpr(this);
+    }
+
+    final Token keyword;
+    final Token method;
+  }
+  public static class This extends Expr {
+    This(Token keyword) {
+      this.keyword = keyword;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitThisExpr(this);
+    }
+
+    final Token keyword;
+  }
   public static class Unary extends Expr {
     Unary(Token operator, Expr right) {
       this.operator = operator;
@@ -0,0 +1,8 @@
+package com.ci.jlox;
+
+enum FunctionType {
+    NONE,
+    FUNCTION,
+    INITIALIZER,
+    METHOD,
+}
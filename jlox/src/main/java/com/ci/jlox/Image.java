@@ -0,0 +1,740 @@
+package com.ci.jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A binary image of everything reachable from the globals: environments,
+// functions with their resolved ASTs, classes, instances, arrays and maps.
+// Loading one into a fresh interpreter stands in for running the script
+// that built it, so a prelude is scanned, parsed, resolved and run once
+// instead of on every launch.
+//
+// Layout, all big-endian: magic, version, a CRC-32 of the rest, then the
+// shell records that create
+// every object in dependency order (an environment after its enclosing one,
+// a function after its closure, a class after its superclass and methods),
+// then the fill records that put values into environments, instances, arrays
+// and maps. Splitting the two lets cycles such as a closure stored in its
+// own environment resolve to objects that already exist. AST nodes are
+// written inline where a function first needs them, with their resolver
+// depths, and referenced by id after that.
+//
+// Tasks, channels, atomics, generators and the methods of native objects
+// (`var push = arr.push;`) wrap threads, locks or Java state and can't be
+// saved. Saving fails with the name of the global that reaches one. A
+// truncated or corrupt image fails to load with an IOException rather than
+// leaving the interpreter with half its globals or a bad resolver depth.
+final class Image {
+    private static final int MAGIC = 0x4C4F5849; // "LOXI"
+    private static final int VERSION = 3;
+
+    // Values.
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte OBJECT = 5;
+
+    // Shell records.
+    private static final byte GLOBALS = 0;
+    private static final byte ENVIRONMENT = 1;
+    private static final byte FUNCTION = 2;
+    private static final byte CLASS = 3;
+    private static final byte INSTANCE = 4;
+    private static final byte ARRAY = 5;
+    private static final byte MAP = 6;
+    private static final byte BOUND_METHOD = 7;
+    private static final byte NATIVE = 8;
+
+    // AST nodes, in GenerateAst order.
+    private static final byte NO_NODE = 0;
+    private static final byte NODE_REF = 1;
+    private static final byte ASSIGN = 2;
+    private static final byte BINARY = 3;
+    private static final byte CALL = 4;
+    private static final byte GET = 5;
+    private static final byte GROUPING = 6;
+    private static final byte LITERAL = 7;
+    private static final byte LOGICAL = 8;
+    private static final byte SET = 9;
+    private static final byte SUPER = 10;
+    private static final byte THIS = 11;
+    private static final byte UNARY = 12;
+    private static final byte VARIABLE = 13;
+    private static final byte BLOCK = 14;
+    private static final byte CLASS_STMT = 15;
+    private static final byte EXPRESSION = 16;
+    private static final byte FUNCTION_STMT = 17;
+    private static final byte IF = 18;
+    private static final byte PRINT = 19;
+    private static final byte RETURN = 20;
+    private static final byte VAR = 21;
+    private static final byte WHILE = 22;
+    private static final byte YIELD = 23;
+
+    private Image() {
+    }
+
+    static void save(final Path path, final Interpreter interpreter) throws IOException {
+        final var writer = new Writer(interpreter);
+        writer.shell(interpreter.globals);
+        writer.drain();
+        final var records = new ByteArrayOutputStream();
+        final var out = new DataOutputStream(records);
+        out.writeInt(writer.shellCount);
+        writer.shellBytes.writeTo(out);
+        out.writeInt(writer.fillCount);
+        writer.fillBytes.writeTo(out);
+        out.flush();
+        final var checksum = new CRC32();
+        checksum.update(records.toByteArray());
+        final var image = new ByteArrayOutputStream();
+        final var header = new DataOutputStream(image);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt((int) checksum.getValue());
+        records.writeTo(header);
+        header.flush();
+        Files.write(path, image.toByteArray());
+    }
+
+    // Defines the image's globals in `interpreter`, which must be fresh.
+    static void load(final Path path, final Interpreter interpreter) throws IOException {
+        final ByteBuffer in;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException(path + " is not a jlox image.");
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException(path + " is a version " + version +
+                    " image; this jlox reads version " + VERSION + ".");
+        }
+        if (in.remaining() < 4) {
+            throw new IOException(path + " is truncated or corrupt.");
+        }
+        final int expected = in.getInt();
+        final var checksum = new CRC32();
+        checksum.update(in.slice());
+        if ((int) checksum.getValue() != expected) {
+            throw new IOException(path + " is truncated or corrupt.");
+        }
+        final var reader = new Reader(in, interpreter);
+        try {
+            for (int i = reader.length(); i > 0; i--) {
+                reader.shell();
+            }
+            for (int i = reader.length(); i > 0; i--) {
+                reader.fill();
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException |
+                 IllegalStateException e) {
+            throw new IOException(path + " is truncated or corrupt.", e);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException(path + " is corrupt: " + in.remaining() +
+                    " bytes follow the last record.");
+        }
+    }
+
+    private static final class Writer {
+        private final Interpreter interpreter;
+        private final ByteArrayOutputStream shellBytes = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream fillBytes = new ByteArrayOutputStream();
+        private final DataOutputStream shells = new DataOutputStream(shellBytes);
+        private final DataOutputStream fills = new DataOutputStream(fillBytes);
+        private final Map<Object, Integer> objects = new IdentityHashMap<>();
+        private final Map<Object, Integer> nodes = new IdentityHashMap<>();
+        // The interpreter's own natives, by the global name they're under.
+        private final Map<Object, String> natives = new IdentityHashMap<>();
+        // Objects whose contents still have to be written, and the global
+        // each was first reached from, for errors.
+        private final ArrayDeque<Object> pending = new ArrayDeque<>();
+        private final Map<Object, String> reachedFrom = new IdentityHashMap<>();
+        // The global whose value is being written, and that value.
+        private String global;
+        private Object globalValue;
+        private int shellCount;
+        private int fillCount;
+
+        Writer(final Interpreter interpreter) {
+            this.interpreter = interpreter;
+            interpreter.globals.bindings().forEach((name, value) -> {
+                if (isNative(value)) {
+                    natives.put(value, name);
+                }
+            });
+        }
+
+        private static boolean isNative(final Object value) {
+            return value instanceof LoxCallable && !(value instanceof LoxFunction) &&
+                    !(value instanceof LoxClass) && !(value instanceof LoxBoundMethod) &&
+                    !(value instanceof LoxNativeMethod);
+        }
+
+        private int register(final Object object, final byte tag) throws IOException {
+            final int id = shellCount++;
+            objects.put(object, id);
+            reachedFrom.put(object, global);
+            shells.writeByte(tag);
+            return id;
+        }
+
+        int shell(final Object object) throws IOException {
+            final Integer known = objects.get(object);
+            if (known != null) {
+                return known;
+            }
+            switch (object) {
+                case Environment env when env == interpreter.globals -> {
+                    register(env, GLOBALS);
+                    pending.add(env);
+                }
+                case Environment env -> {
+                    final int enclosing = shell(env.enclosing);
+                    register(env, ENVIRONMENT);
+                    shells.writeInt(enclosing);
+                    pending.add(env);
+                }
+                case LoxFunction function -> {
+                    final int closure = shell(function.closure());
+                    register(function, FUNCTION);
+                    node(shells, function.declaration());
+                    shells.writeInt(closure);
+                    shells.writeBoolean(function.isInitializer());
+                }
+                case LoxClass klass -> {
+                    final int superclass = (klass.superclass == null) ? -1 : shell(klass.superclass);
+                    final Map<String, Integer> methods = new HashMap<>();
+                    for (final var method : klass.methods().entrySet()) {
+                        methods.put(method.getKey(), shell(method.getValue()));
+                    }
+                    register(klass, CLASS);
+                    string(shells, klass.name);
+                    shells.writeInt(superclass);
+                    shells.writeInt(methods.size());
+                    for (final var method : methods.entrySet()) {
+                        string(shells, method.getKey());
+                        shells.writeInt(method.getValue());
+                    }
+                }
+                case LoxInstance instance -> {
+                    final int klass = shell(instance.klass);
+                    register(instance, INSTANCE);
+                    shells.writeInt(klass);
+                    pending.add(instance);
+                }
+                case LoxArray array -> {
+                    register(array, ARRAY);
+                    pending.add(array);
+                }
+                case LoxMap map -> {
+                    register(map, MAP);
+                    pending.add(map);
+                }
+                case LoxBoundMethod bound -> {
+                    final int receiver = shell(bound.receiver);
+                    final int method = shell(bound.method);
+                    register(bound, BOUND_METHOD);
+                    shells.writeInt(receiver);
+                    shells.writeInt(method);
+                }
+                default -> {
+                    final String name = natives.get(object);
+                    if (name == null) {
+                        throw new IOException("Can't save global '" + global + "': it " +
+                                ((object == globalValue) ? "is " : "refers to ") + kind(object) +
+                                ", which an image can't hold.");
+                    }
+                    register(object, NATIVE);
+                    string(shells, name);
+                }
+            }
+            return objects.get(object);
+        }
+
+        // What an unsaveable value is, for errors.
+        private static String kind(final Object value) {
+            return switch (value) {
+                case LoxNativeMethod method -> "a method of a native object";
+                case LoxTask task -> "a task";
+                case LoxChannel channel -> "a channel";
+                case LoxAtomic atomic -> "an atomic";
+                case LoxGenerator generator -> "a generator";
+                default -> value.getClass().getSimpleName() + " " + Interpreter.stringify(value);
+            };
+        }
+
+        void drain() throws IOException {
+            while (!pending.isEmpty()) {
+                final Object object = pending.poll();
+                global = reachedFrom.get(object);
+                globalValue = null;
+                fillCount++;
+                fills.writeInt(objects.get(object));
+                switch (object) {
+                    case Environment env -> {
+                        final Map<String, Object> bindings = env.bindings();
+                        if (env == interpreter.globals) {
+                            // A fresh interpreter defines these itself.
+                            bindings.entrySet().removeIf(binding ->
+                                    binding.getKey().equals(natives.get(binding.getValue())));
+                        }
+                        entries(bindings, env == interpreter.globals);
+                    }
+                    case LoxInstance instance -> entries(instance.fieldValues(), false);
+                    case LoxArray array -> {
+                        fills.writeInt(array.length());
+                        for (int i = 0; i < array.length(); i++) {
+                            value(fills, array.at(i));
+                        }
+                    }
+                    case LoxMap map -> {
+                        final LoxArray keys = map.keys();
+                        fills.writeInt(keys.length());
+                        for (int i = 0; i < keys.length(); i++) {
+                            value(fills, keys.at(i));
+                            value(fills, map.get(keys.at(i)));
+                        }
+                    }
+                    default -> throw new IllegalStateException("Nothing to fill in " + object);
+                }
+            }
+        }
+
+        private void entries(final Map<String, Object> entries, final boolean globals)
+                throws IOException {
+            fills.writeInt(entries.size());
+            for (final var entry : entries.entrySet()) {
+                if (globals) {
+                    global = entry.getKey();
+                    globalValue = entry.getValue();
+                }
+                string(fills, entry.getKey());
+                value(fills, entry.getValue());
+            }
+        }
+
+        private void value(final DataOutputStream out, final Object value) throws IOException {
+            switch (value) {
+                case null -> out.writeByte(NIL);
+                case Boolean b -> out.writeByte(b ? TRUE : FALSE);
+                case Double d -> {
+                    out.writeByte(NUMBER);
+                    out.writeDouble(d);
+                }
+                case String s -> {
+                    out.writeByte(STRING);
+                    string(out, s);
+                }
+                case LoxString s -> {
+                    out.writeByte(STRING);
+                    string(out, s.toString());
+                }
+                default -> {
+                    final int id = shell(value);
+                    out.writeByte(OBJECT);
+                    out.writeInt(id);
+                }
+            }
+        }
+
+        private void node(final DataOutputStream out, final Object node) throws IOException {
+            if (node == null) {
+                out.writeByte(NO_NODE);
+                return;
+            }
+            final Integer known = nodes.get(node);
+            if (known != null) {
+                out.writeByte(NODE_REF);
+                out.writeInt(known);
+                return;
+            }
+            nodes.put(node, nodes.size());
+            switch (node) {
+                case Expr.Assign expr -> {
+                    out.writeByte(ASSIGN);
+                    token(out, expr.name);
+                    node(out, expr.value);
+                    depth(out, expr);
+                }
+                case Expr.Binary expr -> {
+                    out.writeByte(BINARY);
+                    node(out, expr.left);
+                    token(out, expr.operator);
+                    node(out, expr.right);
+                }
+                case Expr.Call expr -> {
+                    out.writeByte(CALL);
+                    node(out, expr.callee);
+                    token(out, expr.paren);
+                    nodes(out, expr.arguments);
+                }
+                case Expr.Get expr -> {
+                    out.writeByte(GET);
+                    node(out, expr.object);
+                    token(out, expr.name);
+                }
+                case Expr.Grouping expr -> {
+                    out.writeByte(GROUPING);
+                    node(out, expr.expression);
+                }
+                case Expr.Literal expr -> {
+                    out.writeByte(LITERAL);
+                    value(out, expr.value);
+                }
+                case Expr.Logical expr -> {
+                    out.writeByte(LOGICAL);
+                    node(out, expr.left);
+                    token(out, expr.operator);
+                    node(out, expr.right);
+                }
+                case Expr.Set expr -> {
+                    out.writeByte(SET);
+                    node(out, expr.object);
+                    token(out, expr.name);
+                    node(out, expr.value);
+                }
+                case Expr.Super expr -> {
+                    out.writeByte(SUPER);
+                    token(out, expr.keyword);
+                    token(out, expr.method);
+                    depth(out, expr);
+                }
+                case Expr.This expr -> {
+                    out.writeByte(THIS);
+                    token(out, expr.keyword);
+                    depth(out, expr);
+                }
+                case Expr.Unary expr -> {
+                    out.writeByte(UNARY);
+                    token(out, expr.operator);
+                    node(out, expr.right);
+                }
+                case Expr.Variable expr -> {
+                    out.writeByte(VARIABLE);
+                    token(out, expr.name);
+                    depth(out, expr);
+                }
+                case Stmt.Block stmt -> {
+                    out.writeByte(BLOCK);
+                    out.writeInt(stmt.line);
+                    nodes(out, stmt.statements);
+                    out.writeBoolean(stmt.scopeless);
+                }
+                case Stmt.Class stmt -> {
+                    out.writeByte(CLASS_STMT);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.name);
+                    node(out, stmt.superclass);
+                    nodes(out, stmt.methods);
+                }
+                case Stmt.Expression stmt -> {
+                    out.writeByte(EXPRESSION);
+                    out.writeInt(stmt.line);
+                    node(out, stmt.expression);
+                }
+                case Stmt.Function stmt -> {
+                    if (stmt.lazy != null) {
+                        try {
+                            stmt.lazy.parse(stmt);
+                        } catch (RuntimeError e) {
+                            throw new IOException(e.getMessage());
+                        }
+                    }
+                    out.writeByte(FUNCTION_STMT);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.name);
+                    out.writeInt(stmt.params.size());
+                    for (final Token param : stmt.params) {
+                        token(out, param);
+                    }
+                    nodes(out, stmt.body);
+                    out.writeBoolean(stmt.generator);
+                }
+                case Stmt.If stmt -> {
+                    out.writeByte(IF);
+                    out.writeInt(stmt.line);
+                    node(out, stmt.condition);
+                    node(out, stmt.thenBranch);
+                    node(out, stmt.elseBranch);
+                }
+                case Stmt.Print stmt -> {
+                    out.writeByte(PRINT);
+                    out.writeInt(stmt.line);
+                    node(out, stmt.expression);
+                }
+                case Stmt.Return stmt -> {
+                    out.writeByte(RETURN);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.keyword);
+                    node(out, stmt.value);
+                }
+                case Stmt.Var stmt -> {
+                    out.writeByte(VAR);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.name);
+                    node(out, stmt.initializer);
+                }
+                case Stmt.While stmt -> {
+                    out.writeByte(WHILE);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.keyword);
+                    node(out, stmt.condition);
+                    node(out, stmt.body);
+                }
+                case Stmt.Yield stmt -> {
+                    out.writeByte(YIELD);
+                    out.writeInt(stmt.line);
+                    token(out, stmt.keyword);
+                    node(out, stmt.value);
+                }
+                default -> throw new IllegalStateException("Unknown node " + node);
+            }
+        }
+
+        private void nodes(final DataOutputStream out, final List<?> nodes) throws IOException {
+            out.writeInt(nodes.size());
+            for (final Object node : nodes) {
+                node(out, node);
+            }
+        }
+
+        private void depth(final DataOutputStream out, final Expr expr) throws IOException {
+            final Integer depth = interpreter.depth(expr);
+            out.writeInt(depth == null ? -1 : depth);
+        }
+
+        private void token(final DataOutputStream out, final Token token) throws IOException {
+            out.writeByte(token.type.ordinal());
+            string(out, token.lexeme);
+            value(out, token.literal);
+            out.writeInt(token.line);
+        }
+
+        private static void string(final DataOutputStream out, final String s) throws IOException {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Reader {
+        private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+        private final ByteBuffer in;
+        private final Interpreter interpreter;
+        private final List<Object> objects = new ArrayList<>();
+        private final List<Object> nodes = new ArrayList<>();
+
+        Reader(final ByteBuffer in, final Interpreter interpreter) {
+            this.in = in;
+            this.interpreter = interpreter;
+        }
+
+        void shell() {
+            final byte tag = in.get();
+            objects.add(switch (tag) {
+                case GLOBALS -> interpreter.globals;
+                case ENVIRONMENT -> new Environment((Environment) object());
+                case FUNCTION -> {
+                    final var decl = (Stmt.Function) node();
+                    final var closure = (Environment) object();
+                    yield new LoxFunction(decl, closure, in.get() != 0);
+                }
+                case CLASS -> {
+                    final String name = string();
+                    final int superclass = in.getInt();
+                    final Map<String, LoxFunction> methods = new HashMap<>();
+                    for (int i = length(); i > 0; i--) {
+                        methods.put(string(), (LoxFunction) object());
+                    }
+                    yield new LoxClass(name,
+                            (superclass < 0) ? null : (LoxClass) objects.get(superclass), methods);
+                }
+                case INSTANCE -> new LoxInstance((LoxClass) object());
+                case ARRAY -> new LoxArray(0);
+                case MAP -> new LoxMap();
+                case BOUND_METHOD -> {
+                    final var receiver = (LoxInstance) object();
+                    yield new LoxBoundMethod(receiver, (LoxFunction) object());
+                }
+                case NATIVE -> {
+                    final String name = string();
+                    final Object value = interpreter.globals.getAt(0, name);
+                    if (!Writer.isNative(value)) {
+                        throw new IllegalStateException("Unknown native " + name);
+                    }
+                    yield value;
+                }
+                default -> throw new IllegalStateException("Bad image record " + tag);
+            });
+        }
+
+        void fill() {
+            switch (objects.get(in.getInt())) {
+                case Environment env -> {
+                    for (int i = length(); i > 0; i--) {
+                        env.define(string(), value());
+                    }
+                }
+                case LoxInstance instance -> {
+                    for (int i = length(); i > 0; i--) {
+                        instance.setField(string(), value());
+                    }
+                }
+                case LoxArray array -> {
+                    for (int i = length(); i > 0; i--) {
+                        array.push(value());
+                    }
+                }
+                case LoxMap map -> {
+                    for (int i = length(); i > 0; i--) {
+                        final Object key = value();
+                        map.put(key, value());
+                    }
+                }
+                default -> throw new IllegalStateException("Bad image fill record");
+            }
+        }
+
+        private Object object() {
+            return objects.get(in.getInt());
+        }
+
+        private Object value() {
+            final byte tag = in.get();
+            return switch (tag) {
+                case NIL -> null;
+                case FALSE -> false;
+                case TRUE -> true;
+                case NUMBER -> in.getDouble();
+                case STRING -> string();
+                case OBJECT -> object();
+                default -> throw new IllegalStateException("Bad image value " + tag);
+            };
+        }
+
+        private Object node() {
+            final byte tag = in.get();
+            if (tag == NO_NODE) {
+                return null;
+            }
+            if (tag == NODE_REF) {
+                return nodes.get(in.getInt());
+            }
+            final int id = nodes.size();
+            nodes.add(null);
+            final Object node = switch (tag) {
+                case ASSIGN -> resolved(new Expr.Assign(token(), (Expr) node()));
+                case BINARY -> new Expr.Binary((Expr) node(), token(), (Expr) node());
+                case CALL -> new Expr.Call((Expr) node(), token(), nodes());
+                case GET -> new Expr.Get((Expr) node(), token());
+                case GROUPING -> new Expr.Grouping((Expr) node());
+                case LITERAL -> new Expr.Literal(value());
+                case LOGICAL -> new Expr.Logical((Expr) node(), token(), (Expr) node());
+                case SET -> new Expr.Set((Expr) node(), token(), (Expr) node());
+                case SUPER -> resolved(new Expr.Super(token(), token()));
+                case THIS -> resolved(new Expr.This(token()));
+                case UNARY -> new Expr.Unary(token(), (Expr) node());
+                case VARIABLE -> resolved(new Expr.Variable(token()));
+                default -> stmt(tag);
+            };
+            nodes.set(id, node);
+            return node;
+        }
+
+        private Stmt stmt(final byte tag) {
+            final int line = in.getInt();
+            final Stmt stmt = switch (tag) {
+                case BLOCK -> {
+                    final var block = new Stmt.Block(nodes());
+                    block.scopeless = in.get() != 0;
+                    yield block;
+                }
+                case CLASS_STMT -> new Stmt.Class(token(), (Expr.Variable) node(), nodes());
+                case EXPRESSION -> new Stmt.Expression((Expr) node());
+                case FUNCTION_STMT -> {
+                    final Token name = token();
+                    final List<Token> params = new ArrayList<>();
+                    for (int i = length(); i > 0; i--) {
+                        params.add(token());
+                    }
+                    final var function = new Stmt.Function(name, params, nodes());
+                    function.generator = in.get() != 0;
+                    yield function;
+                }
+                case IF -> new Stmt.If((Expr) node(), (Stmt) node(), (Stmt) node());
+                case PRINT -> new Stmt.Print((Expr) node());
+                case RETURN -> new Stmt.Return(token(), (Expr) node());
+                case VAR -> new Stmt.Var(token(), (Expr) node());
+                case WHILE -> new Stmt.While(token(), (Expr) node(), (Stmt) node());
+                case YIELD -> new Stmt.Yield(token(), (Expr) node());
+                default -> throw new IllegalStateException("Bad image node " + tag);
+            };
+            // Ids belong to the script being parsed now, not the image.
+            stmt.line = line;
+            return stmt;
+        }
+
+        // A count or byte length. Every element takes at least a byte, so a
+        // count past the bytes left is corrupt, however large a list it asks
+        // for.
+        int length() {
+            final int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new IllegalStateException("Bad image length " + length);
+            }
+            return length;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> nodes() {
+            final int size = length();
+            final List<T> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add((T) node());
+            }
+            return list;
+        }
+
+        private <T extends Expr> T resolved(final T expr) {
+            final int depth = in.getInt();
+            if (depth >= 0) {
+                interpreter.resolve(expr, depth);
+            }
+            return expr;
+        }
+
+        private Token token() {
+            final TokenType type = TOKEN_TYPES[in.get()];
+            final String lexeme = string();
+            final Object literal = value();
+            return new Token(type, lexeme, literal, in.getInt());
+        }
+
+        private String string() {
+            final byte[] bytes = new byte[length()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.ci.jlox;
+
+import java.util.List;
+
+// The body of a small function compiled for substitution into its call
+// sites. Only `fun f(params) { return expr; }` qualifies, where expr is a
+// handful of literals, operators, property reads, globals, `this` and the
+// function's own parameters. Such a body can't call anything, so it is never
+// recursive, and it never needs an environment of its own: parameters are
+// read straight from the argument list.
+//
+// Call sites only use it behind their callee identity guard, so rebinding a
+// global to another function falls back to a real call on the next hit.
+final class Inline {
+    private interface Node {
+        Object eval(Interpreter interpreter, LoxInstance receiver, List<Object> args);
+    }
+
+    // Nodes allowed in the returned expression.
+    private static final int MAX_NODES = 16;
+
+    private final Node body;
+
+    private Inline(final Node body) {
+        this.body = body;
+    }
+
+    // Null when the function doesn't qualify.
+    static Inline of(final Stmt.Function decl, final Interpreter interpreter) {
+        if (decl.body.size() != 1 ||
+                !(decl.body.get(0) instanceof Stmt.Return ret) || ret.value == null) {
+            return null;
+        }
+        final Node body = new Compiler(decl.params, interpreter).compile(ret.value);
+        return (body == null) ? null : new Inline(body);
+    }
+
+    Object apply(final Interpreter interpreter, final LoxInstance receiver,
+                 final List<Object> args) {
+        return body.eval(interpreter, receiver, args);
+    }
+
+    // Turns one return expression into nodes, giving up once it has used
+    // MAX_NODES of them. Made for a single compile and then dropped.
+    private static final class Compiler {
+        private final List<Token> params;
+        private final Interpreter interpreter;
+        private int budget = MAX_NODES;
+
+        Compiler(final List<Token> params, final Interpreter interpreter) {
+            this.params = params;
+            this.interpreter = interpreter;
+        }
+
+        private Node compile(final Expr expr) {
+            if (--budget < 0) {
+                return null;
+            }
+            switch (expr) {
+                case Expr.Literal literal -> {
+                    final Object value = literal.value;
+                    return (in, receiver, args) -> value;
+                }
+                case Expr.Grouping grouping -> {
+                    return compile(grouping.expression);
+                }
+                case Expr.Variable variable -> {
+                    return variable(variable);
+                }
+                case Expr.This self -> {
+                    // A function nested in a method sees an outer `this`.
+                    if (!Integer.valueOf(0).equals(interpreter.depth(self))) {
+                        return null;
+                    }
+                    return (in, receiver, args) -> receiver;
+                }
+                case Expr.Get get -> {
+                    final Node object = compile(get.object);
+                    if (object == null) {
+                        return null;
+                    }
+                    return (in, receiver, args) -> in.get(get, object.eval(in, receiver, args));
+                }
+                case Expr.Unary unary -> {
+                    final Node right = compile(unary.right);
+                    if (right == null) {
+                        return null;
+                    }
+                    return (in, receiver, args) -> in.unary(unary, right.eval(in, receiver, args));
+                }
+                case Expr.Binary binary -> {
+                    final Node left = compile(binary.left);
+                    final Node right = compile(binary.right);
+                    if (left == null || right == null) {
+                        return null;
+                    }
+                    return (in, receiver, args) -> {
+                        final Object l = left.eval(in, receiver, args);
+                        return in.binary(binary, l, right.eval(in, receiver, args));
+                    };
+                }
+                case Expr.Logical logical -> {
+                    final Node left = compile(logical.left);
+                    final Node right = compile(logical.right);
+                    if (left == null || right == null) {
+                        return null;
+                    }
+                    final boolean or = logical.operator.type == TokenType.OR;
+                    return (in, receiver, args) -> {
+                        final Object l = left.eval(in, receiver, args);
+                        if (Interpreter.isTruthy(l) == or) {
+                            return l;
+                        }
+                        return right.eval(in, receiver, args);
+                    };
+                }
+                default -> {
+                    // Calls, assignments and anything else that needs a frame.
+                    return null;
+                }
+            }
+        }
+
+        private Node variable(final Expr.Variable variable) {
+            final Integer depth = interpreter.depth(variable);
+            if (depth == null) {
+                final Token name = variable.name;
+                return (in, receiver, args) -> in.globals.get(name);
+            }
+            if (depth != 0) {
+                // Captured from an enclosing function.
+                return null;
+            }
+            for (int i = params.size() - 1; i >= 0; i--) {
+                if (params.get(i).lexeme.equals(variable.name.lexeme)) {
+                    final int index = i;
+                    return (in, receiver, args) -> args.get(index);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -4,14 +4,67 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
+    final Environment globals;
+    Environment environment;
+    // Shared with forked interpreters, and the REPL may resolve new lines
+    // while tasks from earlier ones are still reading them.
     private final Map<Expr, Integer> locals;
+    private final OutputSink out;
+    // Set on the interpreter that runs a generator body; `yield` hands
+    // values out through it.
+    private final LoxGenerator.Coroutine coroutine;
+    // Set when running with an explicit stack instead of Java recursion.
+    StackMachine machine;
+    // Set when counting node executions; each thread counts into its own.
+    Profile profile;
+    // Set when sampling allocations, per thread like the profile.
+    Allocations allocations;
+    // Set when recording statement and branch coverage, also per thread.
+    Coverage coverage;
+    // Set on the main interpreter only, when a debugger is attached.
+    Debugger debugger;
+    private Safepoint safepoint = Safepoint.NONE;
+    // Steps left in the current grant, its size, and the steps of earlier grants.
+    private long fuel = Long.MAX_VALUE;
+    private long granted = Long.MAX_VALUE;
+    private long steps;
 
     public Interpreter() {
-        locals = new HashMap<>();
+        this(OutputSink.stdout(OutputSink.FlushPolicy.FULL, 0));
+    }
+
+    private Interpreter(final Interpreter parent, final LoxGenerator.Coroutine coroutine) {
+        globals = parent.globals;
+        environment = globals;
+        locals = parent.locals;
+        out = parent.out;
+        this.coroutine = coroutine;
+        // Limits carry over to forks, but each thread counts its own steps.
+        safepoint = parent.safepoint;
+        granted = fuel = safepoint.grant(0);
+        if (parent.machine != null) {
+            machine = new StackMachine(this, parent.machine.maxFrames());
+        }
+        if (parent.profile != null) {
+            profile = parent.profile.fork();
+        }
+        if (parent.allocations != null) {
+            allocations = parent.allocations.fork();
+        }
+        if (parent.coverage != null) {
+            coverage = parent.coverage.fork();
+        }
+    }
+
+    public Interpreter(final OutputSink out) {
+        this.out = out;
+        globals = new Environment();
+        environment = globals;
+        locals = new ConcurrentHashMap<>();
+        coroutine = null;
         globals.define("clock", new LoxCallable() {
             @Override
             public int arity() { return 0; }
@@ -24,6 +77,150 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             @Override
             public String toString() { return "<native fn>"; }
         });
+        globals.define("Array", new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (args.get(0) instanceof Double length &&
+                        length >= 0 && length == length.intValue()) {
+                    return new LoxArray(length.intValue());
+                }
+                throw new RuntimeError(null,
+                        "Array length must be a non-negative integer.");
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+        globals.define("Map", new LoxCallable() {
+            @Override
+            public int arity() { return 0; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return new LoxMap();
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+        globals.define("Atomic", new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (args.get(0) instanceof Double initial) {
+                    return new LoxAtomic(initial);
+                }
+                throw new RuntimeError(null, "Atomic values must be numbers.");
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+        globals.define("Channel", new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                if (args.get(0) instanceof Double capacity &&
+                        capacity >= 1 && capacity == capacity.intValue()) {
+                    return new LoxChannel(capacity.intValue());
+                }
+                throw new RuntimeError(null,
+                        "Channel capacity must be a positive integer.");
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+        globals.define("spawn", new LoxCallable() {
+            @Override
+            public int arity() { return 1; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                return LoxTask.spawn(interpreter, args.get(0));
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+        globals.define("parallelFor", new LoxCallable() {
+            @Override
+            public int arity() { return 2; }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> args) {
+                LoxTask.parallelFor(interpreter, args.get(0), args.get(1));
+                return null;
+            }
+
+            @Override
+            public String toString() { return "<native fn>"; }
+        });
+    }
+
+    // A fresh interpreter for another thread: it shares globals, resolution
+    // results and output, but walks its own environment chain.
+    Interpreter fork() {
+        return new Interpreter(this, null);
+    }
+
+    Interpreter fork(final LoxGenerator.Coroutine coroutine) {
+        return new Interpreter(this, coroutine);
+    }
+
+    void awaitTasks() {
+        LoxTask.awaitAll();
+        out.flush();
+    }
+
+    // maxSteps and timeoutMillis of 0 mean unlimited; yieldEvery of 0 never
+    // yields. The deadline is fixed when this is called.
+    public void setLimits(final long maxSteps, final long timeoutMillis, final long yieldEvery) {
+        final long deadline = (timeoutMillis > 0) ?
+                System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+        safepoint = new Safepoint(maxSteps, deadline, yieldEvery);
+        steps = 0;
+        granted = fuel = safepoint.grant(0);
+    }
+
+    void safepoint(final Token where) {
+        if (--fuel == 0) {
+            steps += granted;
+            granted = fuel = safepoint.poll(where, steps);
+        }
+    }
+
+    // Runs Lox code on a heap-allocated stack, so recursion depth is bounded
+    // by `maxFrames` and the heap rather than by the Java thread's stack.
+    public void useExplicitStack(final int maxFrames) {
+        machine = new StackMachine(this, maxFrames);
+    }
+
+    void useProfile(final Profile profile) {
+        this.profile = profile;
+    }
+
+    void useAllocations(final Allocations allocations) {
+        this.allocations = allocations;
+    }
+
+    void useCoverage(final Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    void useDebugger(final Debugger debugger) {
+        this.debugger = debugger;
+    }
+
+    void flush() {
+        out.flush();
     }
 
     public void resolve(final Expr expr, int depth) {
@@ -31,33 +228,54 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     }
 
     public void interpret(final List<Stmt> statements) {
+        final var event = new Events.Execute();
+        event.begin();
+        event.statements = statements.size();
         try {
-            for (final var statement : statements) {
-                execute(statement);
+            if (machine != null) {
+                machine.execute(statements);
+            } else {
+                for (final var statement : statements) {
+                    execute(statement);
+                }
             }
         } catch (RuntimeError error) {
+            out.flush();
             LoxErr.runtimeError(error);
+        } finally {
+            out.flush();
+            event.commit();
         }
     }
 
-    private void execute(final Stmt stmt) {
+    void execute(final Stmt stmt) {
+        if (profile != null) {
+            profile.stmt(stmt);
+        }
+        if (coverage != null) {
+            coverage.hit(stmt);
+        }
+        if (debugger != null) {
+            debugger.statement(stmt);
+        }
         stmt.accept(this);
     }
 
-    private String stringify(final Object o) {
-        if (o instanceof Double) {
-            var txt = o.toString();
-            if (txt.endsWith(".0")) {
-                txt = txt.substring(0, txt.length() - 2);
-            }
-            return txt;
+    static String stringify(final Object o) {
+        if (o instanceof Double d) {
+            final var builder = new StringBuilder();
+            OutputSink.appendNumber(builder, d);
+            return builder.toString();
         }
         return ((o == null) ? "nil" : o.toString());
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        final Object value = evaluate(expr.value);
+        return assign(expr, evaluate(expr.value));
+    }
+
+    Object assign(final Expr.Assign expr, final Object value) {
         Integer distance = locals.get(expr);
         if (distance != null) {
             environment.assignAt(distance, expr.name, value);
@@ -71,7 +289,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     public Object visitBinaryExpr(Expr.Binary expr) {
         final Object left = evaluate(expr.left);
         final Object right = evaluate(expr.right);
+        return binary(expr, left, right);
+    }
 
+    Object binary(final Expr.Binary expr, final Object left, final Object right) {
         switch (expr.operator.type) {
             case BANG_EQUAL:
                 return !isEqual(left, right);
@@ -102,8 +323,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return left + (String) right;
+                if (LoxString.isString(left) && LoxString.isString(right)) {
+                    if (allocations != null) {
+                        return allocations.track(expr, "String", () -> LoxString.concat(left, right));
+                    }
+                    return LoxString.concat(left, right);
                 }
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
             default:
@@ -113,28 +337,108 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        if (expr.site.invoke) {
+            return invoke(expr, (Expr.Get) expr.callee);
+        }
         final Object callee = evaluate(expr.callee);
-        final List<Object> args = new ArrayList<>();
+        final List<Object> args = new ArrayList<>(expr.arguments.size());
         for (final Expr arg : expr.arguments) {
             args.add(evaluate(arg));
         }
+        final LoxCallable func = callable(expr, callee, args.size());
+        final Inline inline = expr.site.inline(func);
+        if (inline != null) {
+            return inline.apply(this, null, args);
+        }
+        if (func instanceof LoxFunction function) {
+            // Lox code reports its own errors; only natives need call().
+            return function.call(this, args, null);
+        }
+        return call(expr, func, args);
+    }
+
+    // obj.method(args) without the intermediate bound method. Lookup order
+    // and errors match evaluating the Get first: fields shadow methods, and
+    // a missing property fails before any argument is evaluated.
+    private Object invoke(final Expr.Call expr, final Expr.Get get) {
+        final Object object = evaluate(get.object);
+        final LoxFunction method = method(expr, get, object);
+        final Object callee = (method == null) ? get(get, object) : method;
+        final List<Object> args = new ArrayList<>(expr.arguments.size());
+        for (final Expr arg : expr.arguments) {
+            args.add(evaluate(arg));
+        }
+        final LoxCallable func = callable(expr, callee, args.size());
+        if (method != null) {
+            final Inline inline = expr.site.inline(func);
+            if (inline != null) {
+                return inline.apply(this, (LoxInstance) object, args);
+            }
+            return method.call(this, args, (LoxInstance) object);
+        }
+        return call(expr, func, args);
+    }
+
+    // The method an invoke site calls directly, or null when the property
+    // has to be read the ordinary way.
+    LoxFunction method(final Expr.Call expr, final Expr.Get get, final Object object) {
+        if (object instanceof LoxInstance instance && !instance.hasField(get.name.lexeme)) {
+            return expr.site.method(instance.klass, get.name.lexeme);
+        }
+        return null;
+    }
+
+    LoxCallable callable(final Expr.Call expr, final Object callee, final int argCount) {
+        if (profile != null) {
+            profile.call(expr);
+        }
+        final CallSite site = expr.site;
+        final LoxCallable checked = site.checked(callee);
+        if (checked != null) {
+            safepoint(expr.paren);
+            return checked;
+        }
         if (!(callee instanceof LoxCallable func)) {
             throw new RuntimeError(expr.paren,
                     "Can only call functions and classes.");
         }
-        if (args.size() != func.arity()) {
+        if (argCount != func.arity()) {
             throw new RuntimeError(expr.paren, "Expected " +
                     func.arity() + " arguments but got " +
-                    args.size() + ".");
+                    argCount + ".");
+        }
+        safepoint(expr.paren);
+        // Inlined bodies would hide their nodes from the profile, coverage
+        // and debugger.
+        final boolean inlining = profile == null && coverage == null && debugger == null;
+        site.checked(func, (func instanceof LoxFunction function && inlining)
+                ? function.inline(this) : null);
+        return func;
+    }
+
+    Object call(final Expr.Call expr, final LoxCallable func, final List<Object> args) {
+        try {
+            if (func instanceof LoxClass klass) {
+                return klass.call(this, args, expr);
+            }
+            return func.call(this, args);
+        } catch (RuntimeError error) {
+            if (error.token != null) {
+                throw error;
+            }
+            // Natives don't know their call site; blame the call's paren.
+            throw new RuntimeError(expr.paren, error.getMessage());
         }
-        return func.call(this, args);
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = evaluate(expr.object);
-        if (object instanceof LoxInstance) {
-            return ((LoxInstance)object).get(expr.name);
+        return get(expr, evaluate(expr.object));
+    }
+
+    Object get(final Expr.Get expr, final Object object) {
+        if (object instanceof LoxObject) {
+            return ((LoxObject)object).get(expr.name);
         }
         throw new RuntimeError(expr.name,
                 "Only instances have properties.");
@@ -142,7 +446,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
-        return evaluate(expr);
+        return evaluate(expr.expression);
     }
 
     @Override
@@ -163,19 +467,46 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitSetExpr(Expr.Set expr) {
-        Object object = evaluate(expr.object);
+        final LoxInstance object = settable(expr, evaluate(expr.object));
+        Object value = evaluate(expr.value);
+        object.set(expr.name, value);
+        return value;
+    }
+
+    LoxInstance settable(final Expr.Set expr, final Object object) {
         if (!(object instanceof LoxInstance)) {
             throw new RuntimeError(expr.name,
                     "Only instances have fields.");
         }
-        Object value = evaluate(expr.value);
-        ((LoxInstance)object).set(expr.name, value);
-        return value;
+        return (LoxInstance)object;
+    }
+
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+        final int distance = locals.get(expr);
+        final var superclass = (LoxClass) environment.getAt(distance, "super");
+        // The method's call environment, holding `this`, sits right inside
+        // the class's `super` environment.
+        final var object = (LoxInstance) environment.getAt(distance - 1, "this");
+        final LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        if (method == null) {
+            throw new RuntimeError(expr.method,
+                    "Undefined property '" + expr.method.lexeme + "'.");
+        }
+        return new LoxBoundMethod(object, method);
+    }
+
+    @Override
+    public Object visitThisExpr(Expr.This expr) {
+        return lookUpVariable(expr.keyword, expr);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
+        return unary(expr, evaluate(expr.right));
+    }
+
+    Object unary(final Expr.Unary expr, final Object right) {
         return switch (expr.operator.type) {
             case MINUS -> {
                 checkNrOperand(expr.operator, right);
@@ -191,7 +522,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return lookUpVariable(expr.name, expr);
     }
 
-    private Object lookUpVariable(final Token name, final Expr expr) {
+    Integer depth(final Expr expr) {
+        return locals.get(expr);
+    }
+
+    Object lookUpVariable(final Token name, final Expr expr) {
         final Integer distance = locals.get(expr);
         if (distance != null) {
             return environment.getAt(distance, name.lexeme);
@@ -199,32 +534,37 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return globals.get(name);
     }
 
-    private boolean isTruthy(final Object object) {
+    static boolean isTruthy(final Object object) {
         if (object instanceof Boolean) {
             return (boolean)object;
         }
         return (object != null);
     }
 
-    private boolean isEqual(final Object a, final Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null) {
             return b == null;
         }
+        a = LoxString.flatten(a);
+        b = LoxString.flatten(b);
         return a.equals(b);
     }
 
-    private Object evaluate(final Expr expr) {
+    Object evaluate(final Expr expr) {
+        if (profile != null) {
+            profile.expr(expr);
+        }
         return expr.accept(this);
     }
 
-    private void checkNrOperand(final Token operator, final Object operand) {
+    private static void checkNrOperand(final Token operator, final Object operand) {
         if (operand instanceof Double) {
             return;
         }
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNrOperands(Token operator,
+    private static void checkNrOperands(Token operator,
                                      Object left, Object right) {
         if (left instanceof Double && right instanceof Double) {
             return;
@@ -234,19 +574,47 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        if (stmt.scopeless) {
+            for (final var statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+        executeBlock(stmt.statements, blockEnvironment(stmt));
         return null;
     }
 
+    Environment blockEnvironment(final Stmt.Block stmt) {
+        if (allocations == null) {
+            return new Environment(environment);
+        }
+        return allocations.track(stmt, "Environment", () -> new Environment(environment));
+    }
+
     @Override
     public Object visitClassStmt(Stmt.Class stmt) {
+        Object superclass = null;
+        if (stmt.superclass != null) {
+            superclass = evaluate(stmt.superclass);
+            if (!(superclass instanceof LoxClass)) {
+                throw new RuntimeError(stmt.superclass.name,
+                        "Superclass must be a class.");
+            }
+        }
         environment.define(stmt.name.lexeme, null);
+        // One environment per class declaration holds `super`; binding a
+        // method to an instance adds nothing on top of it.
+        Environment closure = environment;
+        if (superclass != null) {
+            closure = new Environment(environment);
+            closure.define("super", superclass);
+        }
         Map<String, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            final var function = new LoxFunction(method, environment);
+            final var function = closure(method, closure, method.name.lexeme.equals("init"));
             methods.put(method.name.lexeme, function);
         }
-        final var klass =  new LoxClass(stmt.name.lexeme, methods);
+        final var klass =  new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
         environment.assign(stmt.name, klass);
         return null;
     }
@@ -271,14 +639,27 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitFunctionStmt(final Stmt.Function stmt) {
-        final var function = new LoxFunction(stmt, environment);
+        final var function = closure(stmt, environment, false);
         environment.define(stmt.name.lexeme, function);
         return null;
     }
 
+    private LoxFunction closure(final Stmt.Function decl, final Environment closure,
+                                final boolean initializer) {
+        if (allocations == null) {
+            return new LoxFunction(decl, closure, initializer);
+        }
+        return allocations.track(decl, "LoxFunction",
+                () -> new LoxFunction(decl, closure, initializer));
+    }
+
     @Override
     public Object visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
+        final boolean taken = isTruthy(evaluate(stmt.condition));
+        if (coverage != null) {
+            coverage.branch(stmt, taken);
+        }
+        if (taken) {
             execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
             execute(stmt.elseBranch);
@@ -288,11 +669,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitPrintStmt(Stmt.Print stmt) {
-        final Object val = evaluate(stmt.expression);
-        IO.println(stringify(val));
+        print(evaluate(stmt.expression));
         return null;
     }
 
+    void print(final Object val) {
+        out.println(val);
+    }
+
     @Override
     public Object visitReturnStmt(Stmt.Return stmt) {
         Object val = null;
@@ -315,8 +699,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
+            if (coverage != null) {
+                coverage.branch(stmt, true);
+            }
             execute(stmt.body);
+            if (profile != null) {
+                profile.loop(stmt);
+            }
+            safepoint(stmt.keyword);
+        }
+        if (coverage != null) {
+            coverage.branch(stmt, false);
         }
         return null;
     }
+
+    @Override
+    public Object visitYieldStmt(Stmt.Yield stmt) {
+        Object val = null;
+        if (stmt.value != null) {
+            val = evaluate(stmt.value);
+        }
+        yieldValue(val);
+        return null;
+    }
+
+    void yieldValue(final Object val) {
+        coroutine.yield(val);
+    }
 }
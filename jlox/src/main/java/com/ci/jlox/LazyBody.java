@@ -0,0 +1,64 @@
+package com.ci.jlox;
+
+import java.util.List;
+import java.util.Map;
+
+// A function body the parser only matched braces over. Its first call
+// parses it and resolves it against the scopes the resolver had at the
+// declaration, with the same outcome as doing both up front. Errors in it
+// are reported at that point, and the function can't be called after that.
+final class LazyBody {
+    private final Parser parser;
+    // Indexes into the parser's tokens of the body's first token and of its
+    // closing brace.
+    final int start;
+    final int end;
+    // What the resolver knew at the declaration.
+    private Interpreter interpreter;
+    private List<Map<String, Boolean>> scopes;
+    private ClassType classType;
+    private FunctionType functionType;
+    private volatile boolean parsed;
+    private boolean failed;
+
+    LazyBody(final Parser parser, final int start, final int end) {
+        this.parser = parser;
+        this.start = start;
+        this.end = end;
+    }
+
+    boolean isParsed() {
+        return parsed;
+    }
+
+    synchronized void defer(final Interpreter interpreter, final List<Map<String, Boolean>> scopes,
+                            final ClassType classType, final FunctionType functionType) {
+        this.interpreter = interpreter;
+        this.scopes = scopes;
+        this.classType = classType;
+        this.functionType = functionType;
+    }
+
+    // Sets `decl.body` and `decl.generator` unless that already happened.
+    // The body is resolved before it's published, and immutable after, so
+    // a thread that sees it never sees it half built.
+    synchronized void parse(final Stmt.Function decl) {
+        if (!parsed && !failed) {
+            final List<Stmt> body = parser.parseBody(this);
+            failed = body == null;
+            if (!failed) {
+                failed = Resolver.resolveLazyBody(interpreter, decl, body, functionType, classType,
+                        scopes);
+                if (!failed) {
+                    decl.body = List.copyOf(body);
+                }
+            }
+            parsed = !failed;
+            scopes = null;
+        }
+        if (failed) {
+            throw new RuntimeError(decl.name,
+                    "Can't call '" + decl.name.lexeme + "' because its body has errors.");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.ci.jlox;
+
+import java.util.Arrays;
+
+// Elements live unboxed in `numbers` for as long as the array only ever held
+// numbers; the first non-number moves everything into `values` for good.
+public class LoxArray implements LoxObject {
+    private static final int MIN_CAPACITY = 8;
+
+    private double[] numbers;
+    private Object[] values;
+    private int size;
+    // length, get, set, push and pop, each made on first use and then
+    // reused, so `a.push(x)` in a loop allocates nothing and call sites can
+    // cache the method by identity. Their errors carry no token; the call
+    // site supplies the line.
+    private LoxNativeMethod[] methods;
+
+    LoxArray(final int size) {
+        this.numbers = new double[Math.max(size, MIN_CAPACITY)];
+        this.size = size;
+    }
+
+    @Override
+    public Object get(final Token name) {
+        final int slot = switch (name.lexeme) {
+            case "length" -> 0;
+            case "get" -> 1;
+            case "set" -> 2;
+            case "push" -> 3;
+            case "pop" -> 4;
+            default -> throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        };
+        if (methods == null) {
+            methods = new LoxNativeMethod[5];
+        }
+        LoxNativeMethod method = methods[slot];
+        if (method == null) {
+            method = switch (slot) {
+                case 0 -> new LoxNativeMethod(0, args -> (double) size);
+                case 1 -> new LoxNativeMethod(1, args -> get(args.get(0)));
+                case 2 -> new LoxNativeMethod(2, args -> set(args.get(0), args.get(1)));
+                case 3 -> new LoxNativeMethod(1, args -> {
+                    push(args.get(0));
+                    return null;
+                });
+                default -> new LoxNativeMethod(0, args -> pop());
+            };
+            methods[slot] = method;
+        }
+        return method;
+    }
+
+    int length() {
+        return size;
+    }
+
+    Object at(final int i) {
+        return (numbers != null) ? numbers[i] : values[i];
+    }
+
+    Object get(final Object index) {
+        final int i = checkIndex(index);
+        if (numbers != null) {
+            return numbers[i];
+        }
+        return values[i];
+    }
+
+    Object set(final Object index, final Object value) {
+        final int i = checkIndex(index);
+        if (numbers != null) {
+            if (value instanceof Double d) {
+                numbers[i] = d;
+                return value;
+            }
+            generalize();
+        }
+        values[i] = value;
+        return value;
+    }
+
+    void push(final Object value) {
+        if (numbers != null) {
+            if (value instanceof Double d) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                }
+                numbers[size++] = d;
+                return;
+            }
+            generalize();
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    Object pop() {
+        if (size == 0) {
+            throw new RuntimeError(null, "Can't pop from an empty array.");
+        }
+        size--;
+        if (numbers != null) {
+            return numbers[size];
+        }
+        final Object value = values[size];
+        values[size] = null;
+        return value;
+    }
+
+    private void generalize() {
+        values = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            values[i] = numbers[i];
+        }
+        numbers = null;
+    }
+
+    private int checkIndex(final Object index) {
+        if (index instanceof Double d) {
+            final int i = d.intValue();
+            if (i == d && i >= 0 && i < size) {
+                return i;
+            }
+            throw new RuntimeError(null, "Array index " +
+                    Interpreter.stringify(index) + " out of bounds.");
+        }
+        throw new RuntimeError(null, "Array index must be a number.");
+    }
+
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(Interpreter.stringify(numbers != null ? numbers[i] : values[i]));
+        }
+        return builder.append("]").toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ci.jlox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// A number that tasks can update atomically, for counters and totals that
+// `o.n = o.n + 1` would race on.
+public class LoxAtomic implements LoxObject {
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(LoxAtomic.class, "value", double.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile double value;
+    // get, set, add and compareAndSet, made on first use and then reused
+    // like LoxArray's methods. Tasks racing to make one may each make their
+    // own, and any of them works.
+    private LoxNativeMethod[] methods;
+
+    LoxAtomic(final double value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object get(final Token name) {
+        final int slot = switch (name.lexeme) {
+            case "get" -> 0;
+            case "set" -> 1;
+            case "add" -> 2;
+            case "compareAndSet" -> 3;
+            default -> throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        };
+        LoxNativeMethod[] methods = this.methods;
+        if (methods == null) {
+            methods = new LoxNativeMethod[4];
+            this.methods = methods;
+        }
+        LoxNativeMethod method = methods[slot];
+        if (method == null) {
+            method = switch (slot) {
+                case 0 -> new LoxNativeMethod(0, args -> value);
+                case 1 -> new LoxNativeMethod(1, args -> {
+                    value = checkNumber(args.get(0));
+                    return args.get(0);
+                });
+                case 2 -> new LoxNativeMethod(1, args -> {
+                    final double delta = checkNumber(args.get(0));
+                    return (double) VALUE.getAndAdd(this, delta) + delta;
+                });
+                default -> new LoxNativeMethod(2, args ->
+                        VALUE.compareAndSet(this, checkNumber(args.get(0)),
+                                checkNumber(args.get(1))));
+            };
+            methods[slot] = method;
+        }
+        return method;
+    }
+
+    private static double checkNumber(final Object value) {
+        if (value instanceof Double d) {
+            return d;
+        }
+        throw new RuntimeError(null, "Atomic values must be numbers.");
+    }
+
+    @Override
+    public String toString() {
+        return Interpreter.stringify(value);
+    }
+}
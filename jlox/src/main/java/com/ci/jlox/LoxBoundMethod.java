@@ -0,0 +1,30 @@
+package com.ci.jlox;
+
+import java.util.List;
+
+// A method read off an instance. It only pairs the two; `this` is defined
+// in the method's call environment, so binding allocates no Environment.
+public class LoxBoundMethod implements LoxCallable {
+    final LoxInstance receiver;
+    final LoxFunction method;
+
+    LoxBoundMethod(final LoxInstance receiver, final LoxFunction method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public int arity() {
+        return method.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return method.call(interpreter, args, receiver);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package com.ci.jlox;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A bounded FIFO between tasks. Blocked senders and receivers wait on
+// conditions of a ReentrantLock, which parks a virtual thread and frees its
+// carrier instead of spinning or pinning it. drain(max) takes the lock once
+// for a whole batch.
+public class LoxChannel implements LoxObject {
+    private final Object[] items;
+    private int head;
+    private int count;
+    private boolean closed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // send, receive, drain and close, made on first use and then reused like
+    // LoxArray's methods. Tasks racing to make one may each make their own,
+    // and any of them works.
+    private LoxNativeMethod[] methods;
+
+    LoxChannel(final int capacity) {
+        items = new Object[capacity];
+    }
+
+    @Override
+    public Object get(final Token name) {
+        final int slot = switch (name.lexeme) {
+            case "send" -> 0;
+            case "receive" -> 1;
+            case "drain" -> 2;
+            case "close" -> 3;
+            default -> throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        };
+        LoxNativeMethod[] methods = this.methods;
+        if (methods == null) {
+            methods = new LoxNativeMethod[4];
+            this.methods = methods;
+        }
+        LoxNativeMethod method = methods[slot];
+        if (method == null) {
+            method = switch (slot) {
+                case 0 -> new LoxNativeMethod(1, args -> {
+                    send(args.get(0));
+                    return null;
+                });
+                case 1 -> new LoxNativeMethod(0, args -> receive());
+                case 2 -> new LoxNativeMethod(1, args -> drain(args.get(0)));
+                default -> new LoxNativeMethod(0, args -> {
+                    close();
+                    return null;
+                });
+            };
+            methods[slot] = method;
+        }
+        return method;
+    }
+
+    void send(final Object value) {
+        lock.lock();
+        try {
+            while (count == items.length && !closed) {
+                notFull.await();
+            }
+            if (closed) {
+                throw new RuntimeError(null, "Can't send on a closed channel.");
+            }
+            items[(head + count) % items.length] = value;
+            count++;
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            throw interrupted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns nil once the channel is closed and empty.
+    Object receive() {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) {
+                notEmpty.await();
+            }
+            if (count == 0) {
+                return null;
+            }
+            final Object value = dequeue();
+            notFull.signal();
+            return value;
+        } catch (InterruptedException e) {
+            throw interrupted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits for at least one value, then takes up to `max` of them. An empty
+    // array means the channel is closed and empty.
+    LoxArray drain(final Object max) {
+        if (!(max instanceof Double limit) || limit < 1 || limit != limit.intValue()) {
+            throw new RuntimeError(null, "Drain size must be a positive integer.");
+        }
+        final var batch = new LoxArray(0);
+        lock.lock();
+        try {
+            while (count == 0 && !closed) {
+                notEmpty.await();
+            }
+            final int n = Math.min(count, limit.intValue());
+            for (int i = 0; i < n; i++) {
+                batch.push(dequeue());
+            }
+            if (n > 0) {
+                notFull.signalAll();
+            }
+        } catch (InterruptedException e) {
+            throw interrupted();
+        } finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object dequeue() {
+        final Object value = items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        count--;
+        return value;
+    }
+
+    private static RuntimeError interrupted() {
+        Thread.currentThread().interrupt();
+        return new RuntimeError(null, "Interrupted while waiting on a channel.");
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -1,14 +1,28 @@
 package com.ci.jlox;
 
-import lombok.AllArgsConstructor;
-
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-@AllArgsConstructor
 public class LoxClass implements LoxCallable {
     final String name;
+    final LoxClass superclass;
+    // Own methods merged over every inherited one, so a lookup never walks
+    // the superclass chain.
     final private Map<String, LoxFunction> methods;
+    private final LoxFunction initializer;
+
+    LoxClass(final String name, final LoxClass superclass,
+             final Map<String, LoxFunction> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = new HashMap<>();
+        if (superclass != null) {
+            this.methods.putAll(superclass.methods);
+        }
+        this.methods.putAll(methods);
+        initializer = this.methods.get("init");
+    }
 
     @Override
     public String toString() {
@@ -17,19 +31,40 @@ public class LoxClass implements LoxCallable {
 
     @Override
     public int arity() {
-        return 0;
+        return (initializer == null) ? 0 : initializer.arity();
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> args) {
-        final var instance = new LoxInstance(this);
+        return call(interpreter, args, null);
+    }
+
+    // `site` is the Lox call, or null when a native instantiates the class.
+    Object call(Interpreter interpreter, List<Object> args, Expr.Call site) {
+        final var instance = instantiate(interpreter, site);
+        if (initializer != null) {
+            initializer.call(interpreter, args, instance);
+        }
         return instance;
     }
 
-    LoxFunction findMethod(final String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
+    LoxInstance instantiate(final Interpreter interpreter, final Expr.Call site) {
+        if (interpreter.allocations == null) {
+            return new LoxInstance(this);
         }
-        return null;
+        return interpreter.allocations.track(site, "LoxInstance", () -> new LoxInstance(this));
+    }
+
+    LoxFunction initializer() {
+        return initializer;
+    }
+
+    // Inherited methods included.
+    Map<String, LoxFunction> methods() {
+        return methods;
+    }
+
+    LoxFunction findMethod(final String name) {
+        return methods.get(name);
     }
 }
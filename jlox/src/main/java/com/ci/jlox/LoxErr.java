@@ -22,9 +22,11 @@ public class LoxErr {
         }
     }
 
+    // Errors from natives running outside any Lox call, such as a task's
+    // body, have no token to take a line from.
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.token.line + "]");
+        System.err.println(error.getMessage() + ((error.token == null) ? "" :
+                "\n[line " + error.token.line + "]"));
         hadErr = true;
     }
 }
\ No newline at end of file
@@ -3,11 +3,29 @@ package com.ci.jlox;
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
+    private static final Object NOT_INLINABLE = new Object();
+
     private final Stmt.Function decl;
     private final Environment closure;
-    public LoxFunction(final Stmt.Function decl, final Environment closure) {
+    private final boolean initializer;
+    // False until a lazily parsed declaration has its body, and with it
+    // whether it is a generator.
+    private volatile boolean ready;
+    // Compiled on first use from a call site; NOT_INLINABLE once rejected.
+    // Tasks and generators read it from their own threads.
+    private volatile Object inline;
+
+    public LoxFunction(final Stmt.Function decl, final Environment closure,
+                       final boolean initializer) {
         this.closure = closure;
         this.decl = decl;
+        this.initializer = initializer;
+        this.ready = decl.lazy == null;
+    }
+
+    private void prepare() {
+        decl.lazy.parse(decl);
+        ready = true;
     }
 
     @Override
@@ -17,16 +35,99 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> args) {
-        final var env = new Environment(closure);
-        for (int i = 0; i < decl.params.size(); i++) {
-            env.define(decl.params.get(i).lexeme, args.get(i));
+        return call(interpreter, args, null);
+    }
+
+    Object call(Interpreter interpreter, List<Object> args, LoxInstance receiver) {
+        if (!ready) {
+            prepare();
+        }
+        if (decl.generator) {
+            return new LoxGenerator(this, args, receiver, interpreter);
+        }
+        return invoke(interpreter, args, receiver);
+    }
+
+    Object invoke(Interpreter interpreter, List<Object> args, LoxInstance receiver) {
+        if (interpreter.machine != null) {
+            return interpreter.machine.call(this, args, receiver, decl.name);
+        }
+        final var event = new Events.Call();
+        event.begin();
+        final var env = frame(interpreter, args, receiver);
+        if (interpreter.debugger != null) {
+            interpreter.debugger.enter();
         }
         try {
             interpreter.executeBlock(decl.body, env);
         } catch (Return retVal) {
-            return retVal.value;
+            return initializer ? receiver : retVal.value;
+        } finally {
+            if (interpreter.debugger != null) {
+                interpreter.debugger.exit();
+            }
+            event.function = decl.name.lexeme;
+            event.line = decl.name.line;
+            event.commit();
+        }
+        return initializer ? receiver : null;
+    }
+
+    Environment frame(final Interpreter interpreter, final List<Object> args,
+                      final LoxInstance receiver) {
+        if (interpreter.allocations == null) {
+            return bind(args, receiver);
+        }
+        return interpreter.allocations.track(decl, "Environment", () -> bind(args, receiver));
+    }
+
+    // Methods see `this` in the same environment as their parameters.
+    Environment bind(final List<Object> args, final LoxInstance receiver) {
+        final var env = new Environment(closure);
+        if (receiver != null) {
+            env.define("this", receiver);
+        }
+        for (int i = 0; i < decl.params.size(); i++) {
+            env.define(decl.params.get(i).lexeme, args.get(i));
         }
-        return null;
+        return env;
+    }
+
+    Inline inline(final Interpreter interpreter) {
+        Object cached = inline;
+        if (cached == null) {
+            if (!ready) {
+                prepare();
+            }
+            final Inline compiled = (decl.generator || initializer)
+                    ? null : Inline.of(decl, interpreter);
+            cached = (compiled == null) ? NOT_INLINABLE : compiled;
+            inline = cached;
+        }
+        return (cached == NOT_INLINABLE) ? null : (Inline) cached;
+    }
+
+    Stmt.Function declaration() {
+        return decl;
+    }
+
+    Environment closure() {
+        return closure;
+    }
+
+    List<Stmt> body() {
+        return decl.body;
+    }
+
+    boolean isGenerator() {
+        if (!ready) {
+            prepare();
+        }
+        return decl.generator;
+    }
+
+    boolean isInitializer() {
+        return initializer;
     }
 
     @Override
@@ -0,0 +1,173 @@
+package com.ci.jlox;
+
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+
+// The object returned by calling a function whose body contains `yield`.
+// The body runs on its own virtual thread, and the consumer and the body
+// hand control back and forth, so exactly one side runs at any time.
+// Parking a virtual thread only unmounts the frames that changed since it
+// last ran, so a step does not copy the whole Java stack.
+public class LoxGenerator implements LoxObject {
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final Coroutine coroutine;
+    private Object next;
+    private boolean fetched;
+    // hasNext and next, made on first use and then reused like LoxArray's
+    // methods.
+    private LoxNativeMethod[] methods;
+
+    LoxGenerator(final LoxFunction function, final List<Object> args,
+                 final LoxInstance receiver, final Interpreter interpreter) {
+        coroutine = new Coroutine(function, args, receiver, interpreter);
+        // An abandoned generator would leave its thread parked forever.
+        cleaner.register(this, coroutine::cancel);
+    }
+
+    @Override
+    public Object get(final Token name) {
+        final int slot = switch (name.lexeme) {
+            case "hasNext" -> 0;
+            case "next" -> 1;
+            default -> throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        };
+        if (methods == null) {
+            methods = new LoxNativeMethod[2];
+        }
+        LoxNativeMethod method = methods[slot];
+        if (method == null) {
+            method = (slot == 0)
+                    ? new LoxNativeMethod(0, args -> hasNext())
+                    : new LoxNativeMethod(0, args -> next());
+            methods[slot] = method;
+        }
+        return method;
+    }
+
+    private boolean hasNext() {
+        if (!fetched) {
+            next = coroutine.resume();
+            fetched = true;
+        }
+        return next != Coroutine.DONE;
+    }
+
+    private Object next() {
+        if (!hasNext()) {
+            throw new RuntimeError(null, "Generator is exhausted.");
+        }
+        fetched = false;
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return "<generator>";
+    }
+
+    // Everything the generator thread touches. It must not reference the
+    // LoxGenerator, or the cleaner would never run.
+    static final class Coroutine {
+        static final Object DONE = new Object();
+        private static final Object RESUME = new Object();
+
+        private final SynchronousQueue<Object> yielded = new SynchronousQueue<>();
+        private final SynchronousQueue<Object> resumed = new SynchronousQueue<>();
+        private final Thread thread;
+        private boolean done;
+
+        private Coroutine(final LoxFunction function, final List<Object> args,
+                          final LoxInstance receiver, final Interpreter interpreter) {
+            thread = Thread.ofVirtual().unstarted(() -> {
+                Object outcome = DONE;
+                try {
+                    function.invoke(interpreter.fork(this), args, receiver);
+                } catch (Cancelled e) {
+                    return;
+                } catch (Throwable t) {
+                    outcome = new Failure(t);
+                }
+                try {
+                    handOff(outcome);
+                } catch (Cancelled e) {
+                    // Cancelled while ending, e.g. after a channel wait the
+                    // interrupt cut short; no one is left to tell.
+                }
+            });
+        }
+
+        private Object resume() {
+            if (done) {
+                return DONE;
+            }
+            if (thread.getState() == Thread.State.NEW) {
+                thread.start();
+            } else {
+                handOff(resumed, RESUME);
+            }
+            final Object value = take(yielded);
+            if (value == DONE) {
+                done = true;
+            } else if (value instanceof Failure failure) {
+                done = true;
+                throw runtimeError(failure.cause);
+            }
+            return SharedValues.unmask(value);
+        }
+
+        // What the body threw, as a Lox error. Natives leave the token null,
+        // and the call that resumed the generator fills in its own.
+        private static RuntimeError runtimeError(final Throwable cause) {
+            return switch (cause) {
+                case RuntimeError e -> e;
+                case StackOverflowError e -> new RuntimeError(null, "Stack overflow in generator.");
+                case Error e -> throw e;
+                default -> new RuntimeError(null, "Generator failed: " + cause + ".");
+            };
+        }
+
+        // Called on the generator thread by a `yield` statement.
+        void yield(final Object value) {
+            handOff(SharedValues.mask(value));
+            take(resumed);
+        }
+
+        private void handOff(final Object value) {
+            handOff(yielded, value);
+        }
+
+        private static void handOff(final SynchronousQueue<Object> queue, final Object value) {
+            try {
+                queue.put(value);
+            } catch (InterruptedException e) {
+                throw new Cancelled();
+            }
+        }
+
+        private static Object take(final SynchronousQueue<Object> queue) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                throw new Cancelled();
+            }
+        }
+
+        private void cancel() {
+            thread.interrupt();
+        }
+    }
+
+    private record Failure(Throwable cause) {
+    }
+
+    // Unwinds a cancelled generator's thread through any Lox frames; it is
+    // not a RuntimeError, so nothing on the way catches it.
+    private static final class Cancelled extends RuntimeException {
+        Cancelled() {
+            super(null, null, false, false);
+        }
+    }
+}
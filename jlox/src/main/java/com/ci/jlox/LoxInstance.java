@@ -1,31 +1,90 @@
 package com.ci.jlox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
 
-public class LoxInstance {
-    private final LoxClass klass;
-    private final Map<String, Object> fields;
+public class LoxInstance implements LoxObject {
+    private static final VarHandle FIELDS;
+
+    static {
+        try {
+            FIELDS = MethodHandles.lookup().findVarHandle(LoxInstance.class, "fields", Map.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final LoxClass klass;
+    private Map<String, Object> fields;
 
     public LoxInstance(final LoxClass klass) {
         this.klass = klass;
-        fields = new HashMap<>();
+        fields = LoxTask.started ? SharedValues.create() : new HashMap<>();
     }
 
-    Object get(final Token name) {
-        if (fields.containsKey(name.lexeme)) {
+    @Override
+    public Object get(final Token name) {
+        if (LoxTask.started) {
+            final Object value = shared().get(name.lexeme);
+            if (value != null) {
+                return SharedValues.unmask(value);
+            }
+        } else if (fields.containsKey(name.lexeme)) {
             return fields.get(name.lexeme);
         }
         LoxFunction method = klass.findMethod(name.lexeme);
         if (method != null) {
-            return method;
+            return new LoxBoundMethod(this, method);
         }
         throw new RuntimeError(name,
                 "Undefined property '" + name.lexeme + "'.");
     }
 
+    boolean hasField(final String name) {
+        if (LoxTask.started) {
+            return shared().containsKey(name);
+        }
+        return fields.containsKey(name);
+    }
+
     void set(final Token name, Object value) {
-        fields.put(name.lexeme, value);
+        setField(name.lexeme, value);
+    }
+
+    void setField(final String name, final Object value) {
+        if (LoxTask.started) {
+            shared().put(name, SharedValues.mask(value));
+            return;
+        }
+        fields.put(name, value);
+    }
+
+    // A copy of the fields, for images.
+    Map<String, Object> fieldValues() {
+        final Map<String, Object> copy = new HashMap<>();
+        if (LoxTask.started) {
+            shared().forEach((name, value) -> copy.put(name, SharedValues.unmask(value)));
+        } else {
+            copy.putAll(fields);
+        }
+        return copy;
+    }
+
+    // Same lazy switch to concurrent storage as Environment.shared().
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> shared() {
+        final var current = (Map<String, Object>) FIELDS.getAcquire(this);
+        if (SharedValues.isShared(current)) {
+            return current;
+        }
+        synchronized (this) {
+            if (!SharedValues.isShared(fields)) {
+                FIELDS.setRelease(this, SharedValues.copyOf(fields));
+            }
+            return fields;
+        }
     }
 
     @Override
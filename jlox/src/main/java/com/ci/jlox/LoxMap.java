@@ -0,0 +1,245 @@
+package com.ci.jlox;
+
+// Open-addressing hash table with linear probing. Keys and values sit in two
+// parallel arrays, so an entry costs two references and no node object.
+// Growing doesn't rehash everything at once: the previous table is kept as
+// `oldKeys`/`oldValues` and drained a few slots per operation, with lookups
+// falling back to it until it is empty.
+public class LoxMap implements LoxObject {
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_CAPACITY = 8;
+    private static final int MIGRATE_STEP = 4;
+
+    private Object[] keys = new Object[MIN_CAPACITY];
+    private Object[] values = new Object[MIN_CAPACITY];
+    private int used; // live entries plus tombstones in `keys`
+    private int size; // live entries across both tables
+
+    private Object[] oldKeys;
+    private Object[] oldValues;
+    private int migrated;
+    // Bound methods, made on first use and reused like LoxArray's.
+    private LoxNativeMethod[] methods;
+
+    @Override
+    public Object get(final Token name) {
+        final int slot = switch (name.lexeme) {
+            case "size" -> 0;
+            case "get" -> 1;
+            case "has" -> 2;
+            case "set" -> 3;
+            case "remove" -> 4;
+            case "keys" -> 5;
+            default -> throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        };
+        if (methods == null) {
+            methods = new LoxNativeMethod[6];
+        }
+        LoxNativeMethod method = methods[slot];
+        if (method == null) {
+            method = switch (slot) {
+                case 0 -> new LoxNativeMethod(0, args -> (double) size);
+                case 1 -> new LoxNativeMethod(1, args -> get(checkKey(args.get(0))));
+                case 2 -> new LoxNativeMethod(1, args -> has(checkKey(args.get(0))));
+                case 3 -> new LoxNativeMethod(2, args -> {
+                    put(checkKey(args.get(0)), args.get(1));
+                    return args.get(1);
+                });
+                case 4 -> new LoxNativeMethod(1, args -> remove(checkKey(args.get(0))));
+                default -> new LoxNativeMethod(0, args -> keys());
+            };
+            methods[slot] = method;
+        }
+        return method;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object get(final Object key) {
+        step();
+        int i = find(keys, key);
+        if (i >= 0) {
+            return values[i];
+        }
+        if (oldKeys != null && (i = find(oldKeys, key)) >= 0) {
+            return oldValues[i];
+        }
+        return null;
+    }
+
+    boolean has(final Object key) {
+        step();
+        return find(keys, key) >= 0 ||
+                (oldKeys != null && find(oldKeys, key) >= 0);
+    }
+
+    void put(final Object key, final Object value) {
+        step();
+        final int i = find(keys, key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        if (oldKeys != null) {
+            final int j = find(oldKeys, key);
+            if (j >= 0) {
+                oldKeys[j] = TOMBSTONE;
+                oldValues[j] = null;
+                size--;
+            }
+        }
+        if ((used + 1) * 4 > keys.length * 3) {
+            grow();
+        }
+        insert(key, value);
+        size++;
+    }
+
+    boolean remove(final Object key) {
+        step();
+        int i = find(keys, key);
+        if (i >= 0) {
+            keys[i] = TOMBSTONE;
+            values[i] = null;
+            size--;
+            return true;
+        }
+        if (oldKeys != null && (i = find(oldKeys, key)) >= 0) {
+            oldKeys[i] = TOMBSTONE;
+            oldValues[i] = null;
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    LoxArray keys() {
+        final var array = new LoxArray(0);
+        if (oldKeys != null) {
+            collectKeys(oldKeys, array);
+        }
+        collectKeys(keys, array);
+        return array;
+    }
+
+    private static void collectKeys(final Object[] table, final LoxArray array) {
+        for (final Object key : table) {
+            if (key != null && key != TOMBSTONE) {
+                array.push(key);
+            }
+        }
+    }
+
+    private static int hash(final Object key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Keys compare with equals(), the same relation Interpreter.isEqual uses.
+    private static int find(final Object[] table, final Object key) {
+        final int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            final Object k = table[i];
+            if (k == null) {
+                return -1;
+            }
+            if (k != TOMBSTONE && k.equals(key)) {
+                return i;
+            }
+        }
+    }
+
+    // Callers have already checked that `key` is absent from the table.
+    private void insert(final Object key, final Object value) {
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null && keys[i] != TOMBSTONE) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == null) {
+            used++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private void grow() {
+        while (oldKeys != null) {
+            step();
+        }
+        // A table that is mostly tombstones is rebuilt at the same size.
+        final int capacity = size * 2 >= keys.length ? keys.length * 2 : keys.length;
+        oldKeys = keys;
+        oldValues = values;
+        migrated = 0;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        used = 0;
+    }
+
+    // Moves a bounded number of slots out of the old table. The new table is
+    // at least as large and starts at most half full, so draining finishes
+    // long before it could need to grow again. A moved slot becomes a
+    // tombstone, not empty: keys that collided past it are still in the old
+    // table, and an empty slot would end their probe early.
+    private void step() {
+        if (oldKeys == null) {
+            return;
+        }
+        final int end = Math.min(migrated + MIGRATE_STEP, oldKeys.length);
+        for (; migrated < end; migrated++) {
+            final Object key = oldKeys[migrated];
+            if (key == null) {
+                continue;
+            }
+            if (key != TOMBSTONE) {
+                insert(key, oldValues[migrated]);
+            }
+            oldKeys[migrated] = TOMBSTONE;
+            oldValues[migrated] = null;
+        }
+        if (migrated == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
+        }
+    }
+
+    private static Object checkKey(final Object key) {
+        if (key instanceof String || key instanceof Double || key instanceof Boolean) {
+            return key;
+        }
+        if (key instanceof LoxString) {
+            return key.toString();
+        }
+        throw new RuntimeError(null,
+                "Map keys must be strings, numbers or booleans.");
+    }
+
+    @Override
+    public String toString() {
+        final var builder = new StringBuilder("{");
+        appendEntries(builder, oldKeys, oldValues);
+        appendEntries(builder, keys, values);
+        return builder.append("}").toString();
+    }
+
+    private static void appendEntries(final StringBuilder builder,
+                                      final Object[] table, final Object[] vals) {
+        if (table == null) {
+            return;
+        }
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null && table[i] != TOMBSTONE) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(Interpreter.stringify(table[i]))
+                        .append(": ")
+                        .append(Interpreter.stringify(vals[i]));
+            }
+        }
+    }
+}
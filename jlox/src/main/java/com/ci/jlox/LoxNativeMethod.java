@@ -0,0 +1,32 @@
+package com.ci.jlox;
+
+import java.util.List;
+
+public class LoxNativeMethod implements LoxCallable {
+    interface Body {
+        Object call(List<Object> args);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    LoxNativeMethod(final int arity, final Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> args) {
+        return body.call(args);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
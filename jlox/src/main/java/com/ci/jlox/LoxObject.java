@@ -0,0 +1,5 @@
+package com.ci.jlox;
+
+public interface LoxObject {
+    Object get(Token name);
+}
@@ -0,0 +1,79 @@
+package com.ci.jlox;
+
+// A Lox string produced by concatenation. It is a view of the first `length`
+// chars of a StringBuilder that successive concatenations append to, so
+// `s = s + x` in a loop copies each char once instead of once per iteration.
+// The view is immutable: appending to a string that is no longer the tail of
+// its buffer copies into a fresh one. Short results stay plain Java strings.
+final class LoxString {
+    private static final int MIN_LENGTH = 256;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private LoxString(final StringBuilder buffer, final int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    static boolean isString(final Object o) {
+        return o instanceof String || o instanceof LoxString;
+    }
+
+    static Object flatten(final Object o) {
+        return (o instanceof LoxString) ? o.toString() : o;
+    }
+
+    static Object concat(final Object left, final Object right) {
+        final String tail = right.toString();
+        final int total = length(left) + tail.length();
+        if (total < MIN_LENGTH) {
+            return left.toString() + tail;
+        }
+        if (left instanceof LoxString rope) {
+            synchronized (rope.buffer) {
+                if (rope.buffer.length() == rope.length) {
+                    rope.buffer.append(tail);
+                    return new LoxString(rope.buffer, total);
+                }
+            }
+        }
+        final var buffer = new StringBuilder(total * 2);
+        if (left instanceof LoxString rope) {
+            synchronized (rope.buffer) {
+                buffer.append(rope.buffer, 0, rope.length);
+            }
+        } else {
+            buffer.append((String) left);
+        }
+        buffer.append(tail);
+        return new LoxString(buffer, total);
+    }
+
+    private static int length(final Object o) {
+        return (o instanceof LoxString rope) ? rope.length : ((String) o).length();
+    }
+
+    @Override
+    public String toString() {
+        String s = flat;
+        if (s == null) {
+            synchronized (buffer) {
+                s = buffer.substring(0, length);
+            }
+            flat = s;
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return (o instanceof LoxString other) && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
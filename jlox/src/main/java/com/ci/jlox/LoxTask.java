@@ -0,0 +1,171 @@
+package com.ci.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// A Lox function running on its own virtual thread with a forked
+// interpreter. Globals and closures stay shared between tasks, which is why
+// Environment and LoxInstance switch to concurrent storage once `started` is
+// set. Arrays and maps are not synchronized and must stay confined to one
+// task at a time.
+public class LoxTask implements LoxObject {
+    // Only ever flips to true, before the first thread starts. Tasks may set
+    // it again from their own threads, so reads and writes are volatile.
+    static volatile boolean started = false;
+
+    // Tasks still running.
+    private static final Set<LoxTask> pending = ConcurrentHashMap.newKeySet();
+    // Tasks that failed, in the order they did; joining one takes it out.
+    private static final Queue<LoxTask> failed = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+    private Object result;
+    // Anything the task threw, not just Lox runtime errors.
+    private volatile Throwable error;
+    // join, made on first use and then reused like LoxArray's methods. Tasks
+    // racing to make it may each make their own, and any of them works.
+    private LoxNativeMethod[] methods;
+
+    private LoxTask(final Interpreter interpreter, final LoxCallable fn) {
+        started = true;
+        pending.add(this);
+        thread = Thread.ofVirtual().unstarted(() -> {
+            try {
+                result = fn.call(interpreter.fork(), List.of());
+            } catch (Throwable t) {
+                error = t;
+                failed.add(this);
+            } finally {
+                pending.remove(this);
+            }
+        });
+        thread.start();
+    }
+
+    static LoxTask spawn(final Interpreter interpreter, final Object fn) {
+        if (!(fn instanceof LoxCallable callable) || callable.arity() != 0) {
+            throw new RuntimeError(null, "Can only spawn functions without parameters.");
+        }
+        return new LoxTask(interpreter, callable);
+    }
+
+    // Splits [0, n) into contiguous chunks, a few per core, and runs each
+    // chunk on its own virtual thread. The first failing chunk in index
+    // order decides the error, so failures are reported deterministically.
+    static void parallelFor(final Interpreter interpreter, final Object count, final Object fn) {
+        if (!(count instanceof Double n) || n < 0 || n != n.intValue()) {
+            throw new RuntimeError(null, "Iteration count must be a non-negative integer.");
+        }
+        if (!(fn instanceof LoxCallable callable) || callable.arity() != 1) {
+            throw new RuntimeError(null, "Can only run functions with one parameter in parallel.");
+        }
+        final int total = n.intValue();
+        final int chunks = Math.min(total, Runtime.getRuntime().availableProcessors() * 4);
+        started = true;
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final List<Future<?>> futures = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; c++) {
+                final int from = (int) ((long) total * c / chunks);
+                final int to = (int) ((long) total * (c + 1) / chunks);
+                futures.add(executor.submit(() -> {
+                    final var fork = interpreter.fork();
+                    final var args = new ArrayList<Object>(1);
+                    args.add(null);
+                    for (int i = from; i < to; i++) {
+                        args.set(0, (double) i);
+                        callable.call(fork, args);
+                    }
+                }));
+            }
+            for (final var future : futures) {
+                await(future);
+            }
+        }
+    }
+
+    private static void await(final Future<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            throw runtimeError(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(null, "Interrupted while waiting for tasks.");
+        }
+    }
+
+    // Called when a script finishes: waits for every task it left running,
+    // including ones spawned while waiting, and reports the errors of tasks
+    // that were never joined.
+    static void awaitAll() {
+        while (!pending.isEmpty()) {
+            for (final var task : pending) {
+                try {
+                    task.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        LoxTask task;
+        while ((task = failed.poll()) != null) {
+            LoxErr.runtimeError(runtimeError(task.error));
+        }
+    }
+
+    // Whatever a task or chunk threw, as a Lox error. Without a token of its
+    // own, it takes the line of the native call it surfaces through.
+    private static RuntimeError runtimeError(final Throwable error) {
+        return switch (error) {
+            case RuntimeError e -> e;
+            case StackOverflowError e -> new RuntimeError(null, "Stack overflow in task.");
+            default -> new RuntimeError(null, "Task failed: " + error + ".");
+        };
+    }
+
+    @Override
+    public Object get(final Token name) {
+        if (!name.lexeme.equals("join")) {
+            throw new RuntimeError(name,
+                    "Undefined property '" + name.lexeme + "'.");
+        }
+        LoxNativeMethod[] methods = this.methods;
+        if (methods == null) {
+            methods = new LoxNativeMethod[1];
+            this.methods = methods;
+        }
+        LoxNativeMethod method = methods[0];
+        if (method == null) {
+            method = new LoxNativeMethod(0, args -> join());
+            methods[0] = method;
+        }
+        return method;
+    }
+
+    private Object join() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(null, "Interrupted while joining task.");
+        }
+        if (error != null) {
+            failed.remove(this);
+            throw runtimeError(error);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -7,27 +7,49 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 public class Main {
-    private static final Interpreter interpreter = new Interpreter();
+    private static Interpreter interpreter;
+    private static Profile profile;
+    private static Allocations allocations;
+    private static Coverage coverage;
+    private static Debugger debugger;
+    private static boolean lazyParse;
 
     private static void run(final String src) {
         //System.out.println(src);
-        final var scanner = new Scanner(src);
-        final var tokens = scanner.scanTokens();
-        final var parser = new Parser(tokens);
-        final List<Stmt> statements = parser.parse();
-        if (LoxErr.hadErr) {
-            return;
-        }
-        final var resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        if (LoxErr.hadErr) {
-            return;
+        final var event = new Events.Run();
+        event.begin();
+        event.sourceLength = src.length();
+        try {
+            final var scanner = new Scanner(src);
+            final var tokens = scanner.scanTokens();
+            event.tokens = tokens.size();
+            final var parser = new Parser(tokens, lazyParse);
+            final List<Stmt> statements = parser.parse();
+            event.statements = statements.size();
+            if (LoxErr.hadErr) {
+                return;
+            }
+            if (coverage != null) {
+                coverage.add(statements);
+            }
+            if (debugger != null) {
+                debugger.add(statements);
+            }
+            final var resolver = new Resolver(interpreter);
+            resolver.resolve(statements);
+            if (LoxErr.hadErr) {
+                return;
+            }
+            interpreter.interpret(statements);
+        } finally {
+            event.commit();
         }
-        interpreter.interpret(statements);
     }
 
     private static void runFile(final String filePathStr) throws IOException {
@@ -35,6 +57,26 @@ public class Main {
         final byte[] bytes = Files.readAllBytes(path);
         final var src = new String(bytes, Charset.defaultCharset());
         run(src);
+        interpreter.awaitTasks();
+        if (profile != null) {
+            profile.report(System.err, Integer.getInteger("jlox.profile"));
+        }
+        if (allocations != null) {
+            allocations.report(System.err);
+        }
+        if (coverage != null) {
+            coverage.write(Paths.get(System.getProperty("jlox.coverage")),
+                    path.toAbsolutePath().toString());
+        }
+        final String image = System.getProperty("jlox.image.save");
+        if (image != null && !LoxErr.hadErr && !LoxErr.hadRuntimeErr) {
+            try {
+                Image.save(Paths.get(image), interpreter);
+            } catch (IOException e) {
+                System.err.println("Can't save image " + image + ": " + e.getMessage());
+                System.exit(74);
+            }
+        }
         if (LoxErr.hadErr) {
             System.exit(65);
         }
@@ -63,8 +105,72 @@ public class Main {
             System.exit(64);
         } else if (args.length == 1) {
             final String fileName = args[0];
+            // -Djlox.flush.interval=<ms> trades throughput for visible progress.
+            final long flushInterval = Long.getLong("jlox.flush.interval", 0);
+            interpreter = new Interpreter(OutputSink.stdout(flushInterval > 0 ?
+                    OutputSink.FlushPolicy.INTERVAL : OutputSink.FlushPolicy.FULL, flushInterval));
+            interpreter.setLimits(Long.getLong("jlox.maxSteps", 0),
+                    Long.getLong("jlox.timeout", 0),
+                    Long.getLong("jlox.yieldEvery", 0));
+            // -Djlox.stackDepth=<frames> evaluates on an explicit heap stack.
+            final int stackDepth = Integer.getInteger("jlox.stackDepth", 0);
+            if (stackDepth > 0) {
+                interpreter.useExplicitStack(stackDepth);
+            }
+            // -Djlox.profile=<n> reports the n hottest lines and loops on exit.
+            if (Integer.getInteger("jlox.profile", 0) > 0) {
+                profile = new Profile();
+                interpreter.useProfile(profile);
+            }
+            // -Djlox.allocs=<n> samples about one in n Lox allocations by site.
+            final int allocInterval = Integer.getInteger("jlox.allocs", 0);
+            if (allocInterval > 0) {
+                allocations = new Allocations(allocInterval);
+                interpreter.useAllocations(allocations);
+            }
+            // -Djlox.coverage=<file> writes LCOV line and branch coverage on exit.
+            if (System.getProperty("jlox.coverage") != null) {
+                coverage = new Coverage();
+                interpreter.useCoverage(coverage);
+            }
+            // -Djlox.debug=<line,...> stops at those lines, or at the start
+            // when empty, and takes debugger commands on stdin.
+            final String breakpoints = System.getProperty("jlox.debug");
+            if (breakpoints != null) {
+                final Set<Integer> lines = new HashSet<>();
+                for (final String line : breakpoints.split(",")) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        lines.add(Integer.parseInt(line.trim()));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Usage: -Djlox.debug=<line,...> takes line numbers, not '"
+                                + line.trim() + "'.");
+                        System.exit(64);
+                    }
+                }
+                debugger = new Debugger(interpreter, lines);
+                interpreter.useDebugger(debugger);
+            }
+            // -Djlox.lazyParse=true parses and resolves each function body on
+            // its first call. Coverage and the debugger need every statement
+            // up front, so they turn it off.
+            lazyParse = Boolean.getBoolean("jlox.lazyParse") && coverage == null && debugger == null;
+            // -Djlox.image=<file> starts from the globals a previous run
+            // saved with -Djlox.image.save=<file>.
+            final String image = System.getProperty("jlox.image");
+            if (image != null) {
+                try {
+                    Image.load(Paths.get(image), interpreter);
+                } catch (IOException e) {
+                    System.err.println("Can't load image " + image + ": " + e.getMessage());
+                    System.exit(74);
+                }
+            }
             runFile(fileName);
         } else {
+            interpreter = new Interpreter(OutputSink.stdout(OutputSink.FlushPolicy.LINE, 0));
             runPrompt();
         }
     }
@@ -0,0 +1,93 @@
+package com.ci.jlox;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+// Buffers `print` output and hands it to the underlying stream in large
+// chunks. The buffer is always flushed when it fills up and when a script
+// finishes; the policy adds flushing per line (interactive use) or on a
+// fixed interval (long batch runs that should still show progress).
+public class OutputSink {
+    enum FlushPolicy {
+        LINE,
+        FULL,
+        INTERVAL,
+    }
+
+    private static final int CAPACITY = 8192;
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+    // Below this magnitude Double.toString never switches to E notation.
+    private static final double PLAIN_LIMIT = 1e7;
+
+    private final Writer writer;
+    private final FlushPolicy policy;
+    private final StringBuilder buffer = new StringBuilder(CAPACITY);
+
+    OutputSink(final Writer writer, final FlushPolicy policy, final long intervalMillis) {
+        this.writer = writer;
+        this.policy = policy;
+        if (policy == FlushPolicy.INTERVAL) {
+            final var flusher = new Thread(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(intervalMillis);
+                        flush();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "jlox-output-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    static OutputSink stdout(final FlushPolicy policy, final long intervalMillis) {
+        return new OutputSink(new OutputStreamWriter(System.out, Charset.defaultCharset()),
+                policy, intervalMillis);
+    }
+
+    synchronized void println(final Object value) {
+        if (value instanceof Double d) {
+            appendNumber(buffer, d);
+        } else {
+            buffer.append(value == null ? "nil" : value.toString());
+        }
+        buffer.append('\n');
+        if (policy == FlushPolicy.LINE || buffer.length() >= CAPACITY) {
+            flush();
+        }
+    }
+
+    synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        try {
+            writer.append(buffer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.setLength(0);
+    }
+
+    // Same text as Double.toString with a trailing ".0" dropped, written
+    // straight into `builder` without an intermediate String.
+    static void appendNumber(final StringBuilder builder, final double d) {
+        final long whole = (long) d;
+        if (whole == d && Math.abs(d) < PLAIN_LIMIT &&
+                Double.doubleToRawLongBits(d) != NEGATIVE_ZERO) {
+            builder.append(whole);
+            return;
+        }
+        final int start = builder.length();
+        builder.append(d);
+        final int end = builder.length();
+        if (end - start > 2 && builder.charAt(end - 2) == '.' && builder.charAt(end - 1) == '0') {
+            builder.setLength(end - 2);
+        }
+    }
+}
@@ -2,31 +2,97 @@ package com.ci.jlox;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class Parser {
     private static class ParseError extends RuntimeException {}
 
+    // Binding power of infix operators, weakest first.
+    private enum Precedence {
+        NONE, ASSIGNMENT, OR, AND, EQUALITY, COMPARISON, TERM, FACTOR, UNARY, CALL;
+
+        private static final Precedence[] LEVELS = values();
+
+        Precedence next() {
+            return LEVELS[ordinal() + 1];
+        }
+    }
+
+    // Precedence of each token type as an infix operator, by ordinal.
+    private static final Precedence[] INFIX = new Precedence[TokenType.values().length];
+    private static final Set<TokenType> PREFIX = EnumSet.of(
+            TokenType.FALSE, TokenType.TRUE, TokenType.NIL, TokenType.NUMBER, TokenType.STRING,
+            TokenType.SUPER, TokenType.THIS, TokenType.IDENTIFIER, TokenType.LEFT_PAREN,
+            TokenType.BANG, TokenType.MINUS);
+    // Where synchronize() can pick up parsing again.
+    private static final Set<TokenType> STATEMENT_STARTS = EnumSet.of(
+            TokenType.CLASS, TokenType.FUN, TokenType.VAR, TokenType.FOR, TokenType.IF,
+            TokenType.WHILE, TokenType.PRINT, TokenType.RETURN, TokenType.YIELD);
+
+    static {
+        for (final TokenType type : TokenType.values()) {
+            INFIX[type.ordinal()] = switch (type) {
+                case EQUAL -> Precedence.ASSIGNMENT;
+                case OR -> Precedence.OR;
+                case AND -> Precedence.AND;
+                case BANG_EQUAL, EQUAL_EQUAL -> Precedence.EQUALITY;
+                case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> Precedence.COMPARISON;
+                case MINUS, PLUS -> Precedence.TERM;
+                case SLASH, STAR -> Precedence.FACTOR;
+                case LEFT_PAREN, DOT -> Precedence.CALL;
+                default -> Precedence.NONE;
+            };
+        }
+    }
+
     private final List<Token> tokens;
+    // The parser of the whole script, which bodies parsed later number
+    // their statements from.
+    private final Parser root;
+    // Whether function bodies are skipped until their first call.
+    private final boolean lazyBodies;
     private int current = 0;
+    private int nextId = 0;
+    // Syntax errors this parser has reported.
+    private int errors = 0;
 
     public Parser(final List<Token> tokens) {
+        this(tokens, false);
+    }
+
+    public Parser(final List<Token> tokens, final boolean lazyBodies) {
+        this.tokens = tokens;
+        this.root = this;
+        this.lazyBodies = lazyBodies;
+    }
+
+    private Parser(final List<Token> tokens, final Parser root) {
         this.tokens = tokens;
+        this.root = root;
+        this.lazyBodies = root.lazyBodies;
     }
 
     public List<Stmt> parse() {
+        final var event = new Events.Parse();
+        event.begin();
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) {
             statements.add(declaration());
         }
+        event.tokens = tokens.size();
+        event.statements = statements.size();
+        event.commit();
         return statements;
     }
 
     private Stmt declaration() {
         try {
-            if (match(TokenType.CLASS)) return classDeclaration();
-            if (match(TokenType.FUN)) return function("function");
-            if (match(TokenType.VAR)) return varDeclaration();
+            final Token start = peek();
+            if (match(TokenType.CLASS)) return numbered(classDeclaration(), start);
+            if (match(TokenType.FUN)) return numbered(function("function"), start);
+            if (match(TokenType.VAR)) return numbered(varDeclaration(), start);
             return statement();
         } catch (ParseError error) {
             synchronize();
@@ -36,13 +102,18 @@ public class Parser {
 
     private Stmt classDeclaration() {
         final Token name = consume(TokenType.IDENTIFIER, "Expected class name!");
+        Expr.Variable superclass = null;
+        if (match(TokenType.LESS)) {
+            consume(TokenType.IDENTIFIER, "Expect superclass name.");
+            superclass = new Expr.Variable(previous());
+        }
         consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
         List<Stmt.Function> methods = new ArrayList<>();
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
             methods.add(function("method"));
         }
         consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
-        return new Stmt.Class(name, methods);
+        return new Stmt.Class(name, superclass, methods);
     }
 
     private Stmt varDeclaration() {
@@ -56,14 +127,29 @@ public class Parser {
     }
 
     private Stmt whileStatement() {
+        final Token keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
         final Expr condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
         final Stmt body = statement();
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt statement() {
+        final Token start = peek();
+        return numbered(unnumberedStatement(), start);
+    }
+
+    // Ids are dense per script and index the coverage bitsets.
+    private Stmt numbered(final Stmt stmt, final Token start) {
+        if (stmt.id < 0) {
+            stmt.id = root.nextId++;
+            stmt.line = start.line;
+        }
+        return stmt;
+    }
+
+    private Stmt unnumberedStatement() {
         if (match(TokenType.FOR)) {
             return forStatement();
         }
@@ -79,6 +165,9 @@ public class Parser {
         if (match(TokenType.WHILE)) {
             return whileStatement();
         }
+        if (match(TokenType.YIELD)) {
+            return yieldStatement();
+        }
         if (match(TokenType.LEFT_BRACE)) {
             return new Stmt.Block(block());
         }
@@ -95,15 +184,26 @@ public class Parser {
         return new Stmt.Return(keyword, val);
     }
 
+    private Stmt yieldStatement() {
+        final Token keyword = previous();
+        Expr val = null;
+        if (!check(TokenType.SEMICOLON)) {
+            val = expression();
+        }
+        consume(TokenType.SEMICOLON, "Expect ';' after yield value.");
+        return new Stmt.Yield(keyword, val);
+    }
+
     private Stmt forStatement() {
+        final Token keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
         Stmt initializer;
         if (match(TokenType.SEMICOLON)) {
             initializer = null;
         } else if (match(TokenType.VAR)) {
-            initializer = varDeclaration();
+            initializer = numbered(varDeclaration(), keyword);
         } else {
-            initializer = expressionStatement();
+            initializer = numbered(expressionStatement(), keyword);
         }
         Expr condition = null;
         if (!check(TokenType.SEMICOLON)) {
@@ -111,7 +211,9 @@ public class Parser {
         }
         consume(TokenType.SEMICOLON, "Expect ';' after loop condition.");
         Expr increment = null;
+        Token incrementStart = null;
         if (!check(TokenType.RIGHT_PAREN)) {
+            incrementStart = peek();
             increment = expression();
         }
         consume(TokenType.RIGHT_PAREN, "Expect ')' after for clauses.");
@@ -119,13 +221,13 @@ public class Parser {
         if (increment != null) {
             body = new Stmt.Block(Arrays.asList(
                     body,
-                    new Stmt.Expression(increment)
+                    numbered(new Stmt.Expression(increment), incrementStart)
             ));
         }
         if (condition == null) {
             condition = new Expr.Literal(true);
         }
-        body = new Stmt.While(condition, body);
+        body = numbered(new Stmt.While(keyword, condition, body), keyword);
         if (initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
         }
@@ -180,129 +282,121 @@ public class Parser {
         }
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
         consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        if (lazyBodies) {
+            final var function = new Stmt.Function(name, params, List.of());
+            function.lazy = skipBody();
+            return function;
+        }
         final List<Stmt> block = block();
         return new Stmt.Function(name, params, block);
     }
 
-    private Expr assigment() {
-        final Expr expr = or();
-        if (match(TokenType.EQUAL)) {
-            final Token equals = previous();
-            Expr value = assigment();
-            if (expr instanceof Expr.Variable) {
-                final Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
-            } else if (expr instanceof Expr.Get) {
-                Expr.Get get = (Expr.Get)expr;
-                return new Expr.Set(get.object, get.name, value);
+    // Finds the closing brace of a body without parsing what's in between.
+    private LazyBody skipBody() {
+        final int start = current;
+        int depth = 1;
+        while (!isAtEnd()) {
+            final TokenType type = advance().type;
+            if (type == TokenType.LEFT_BRACE) {
+                depth++;
+            } else if (type == TokenType.RIGHT_BRACE && --depth == 0) {
+                return new LazyBody(this, start, current - 1);
             }
-            error(equals, "Invalid assignment target.");
         }
-        return expr;
+        throw error(peek(), "Expect '}' after block.");
     }
 
-    private Expr or() {
-        var expr = and();
-        while (match(TokenType.OR)) {
-            final Token operator = previous();
-            final Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+    // Parses a body skipBody() passed over, with a parser of its own over
+    // just the body's tokens so that error recovery stops at its end.
+    // Returns null if the body has syntax errors, once they're reported.
+    List<Stmt> parseBody(final LazyBody body) {
+        final List<Token> bodyTokens = new ArrayList<>(tokens.subList(body.start, body.end));
+        bodyTokens.add(new Token(TokenType.EOF, "", null, tokens.get(body.end).line));
+        synchronized (root) {
+            final Parser parser = new Parser(bodyTokens, root);
+            final List<Stmt> statements = parser.parse();
+            return parser.errors == 0 ? statements : null;
         }
-        return expr;
-    }
-
-    private Expr and() {
-        var expr = equality();
-        while (match(TokenType.AND)) {
-            final Token operator = previous();
-            final Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-        return expr;
     }
 
     private Expr expression() {
-        return assigment();
+        return parsePrecedence(Precedence.ASSIGNMENT);
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
-        while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            final Token operator = previous();
-            final Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private boolean match(TokenType... types) {
-        for (final var type : types) {
-            if (check(type)) {
-                advance();
-                return true;
+    // Parses a prefix expression, then every infix operator that binds at
+    // least as tightly as `precedence`. Operands of a left-associative
+    // operator bind one level tighter than it; assignment is the only
+    // right-associative one.
+    private Expr parsePrecedence(final Precedence precedence) {
+        Expr expr = prefix();
+        while (true) {
+            final Token operator = peek();
+            final Precedence infix = INFIX[operator.type.ordinal()];
+            if (infix.compareTo(precedence) < 0) {
+                return expr;
+            }
+            advance();
+            switch (operator.type) {
+                case EQUAL -> {
+                    return assignment(expr, operator);
+                }
+                case AND, OR -> expr = new Expr.Logical(expr, operator,
+                        parsePrecedence(infix.next()));
+                case LEFT_PAREN -> expr = finishCall(expr);
+                case DOT -> expr = new Expr.Get(expr, consume(TokenType.IDENTIFIER,
+                        "Expect property name after '.'."));
+                default -> expr = new Expr.Binary(expr, operator,
+                        parsePrecedence(infix.next()));
             }
         }
-        return false;
-    }
-
-    private Expr comparison() {
-        Expr expr = term();
-        while (match(
-                TokenType.GREATER,
-                TokenType.GREATER_EQUAL,
-                TokenType.LESS_EQUAL,
-                TokenType.LESS
-        )) {
-            final Token operator = previous();
-            final Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr term() {
-        Expr expr = factor();
-        while (match(TokenType.MINUS, TokenType.PLUS)) {
-            final Token operator = previous();
-            final Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-        while (match(TokenType.SLASH, TokenType.STAR)) {
-            final Token operator = previous();
-            final Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr assignment(final Expr target, final Token equals) {
+        final Expr value = parsePrecedence(Precedence.ASSIGNMENT);
+        if (target instanceof Expr.Variable variable) {
+            return new Expr.Assign(variable.name, value);
+        } else if (target instanceof Expr.Get get) {
+            return new Expr.Set(get.object, get.name, value);
         }
-        return expr;
+        error(equals, "Invalid assignment target.");
+        return target;
     }
 
-    private Expr unary() {
-        if (match(TokenType.BANG, TokenType.MINUS)) {
-            final Token operator = previous();
-            final Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private Expr prefix() {
+        final Token token = peek();
+        if (!PREFIX.contains(token.type)) {
+            throw error(token, "Expected expr!");
         }
-        return call();
+        advance();
+        return switch (token.type) {
+            case FALSE -> new Expr.Literal(false);
+            case TRUE -> new Expr.Literal(true);
+            case NIL -> new Expr.Literal(null);
+            case NUMBER, STRING -> new Expr.Literal(token.literal);
+            case SUPER -> {
+                consume(TokenType.DOT, "Expect '.' after 'super'.");
+                final Token method = consume(TokenType.IDENTIFIER,
+                        "Expect superclass method name.");
+                yield new Expr.Super(token, method);
+            }
+            case THIS -> new Expr.This(token);
+            case IDENTIFIER -> new Expr.Variable(token);
+            case LEFT_PAREN -> {
+                final var expr = expression();
+                consume(TokenType.RIGHT_PAREN, "Expect ')' after expr!");
+                yield new Expr.Grouping(expr);
+            }
+            // BANG and MINUS.
+            default -> new Expr.Unary(token, parsePrecedence(Precedence.UNARY));
+        };
     }
 
-    private Expr call() {
-        Expr expr = primary();
-        while (true) {
-            if (match(TokenType.LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else if (match(TokenType.DOT)) {
-                final Token name = consume(TokenType.IDENTIFIER,
-                        "Expect property name after '.'.");
-                expr = new Expr.Get(expr, name);
-            } else {
-                break;
-            }
+    private boolean match(final TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
         }
-        return expr;
+        return false;
     }
 
     private Expr finishCall(final Expr callee) {
@@ -319,27 +413,6 @@ public class Parser {
         return new Expr.Call(callee, paren, args);
     }
 
-    private Expr primary() {
-        if (match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (match(TokenType.NIL)) return new Expr.Literal(null);
-
-        if (match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
-
-        if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
-        }
-
-        if (match(TokenType.LEFT_PAREN)) {
-            final var expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expr!");
-            return new Expr.Grouping(expr);
-        }
-        throw error(peek(), "Expected expr!");
-    }
-
     private boolean check(TokenType tokenType) {
         return !isAtEnd() && peek().type == tokenType;
     }
@@ -368,7 +441,8 @@ public class Parser {
         throw error(peek(), message);
     }
 
-    static ParseError error(final Token token, final String message) {
+    private ParseError error(final Token token, final String message) {
+        errors++;
         LoxErr.error(token, message);
         return new ParseError();
     }
@@ -376,21 +450,10 @@ public class Parser {
     private void synchronize() {
         advance();
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) {
+            if (previous().type == TokenType.SEMICOLON || STATEMENT_STARTS.contains(peek().type)) {
                 return;
             }
-            switch (peek().type) {
-                case CLASS:
-                case FUN:
-                case VAR:
-                case FOR:
-                case IF:
-                case WHILE:
-                case PRINT:
-                case RETURN:
-                    return;
-            }
+            advance();
         }
-        advance();
     }
 }
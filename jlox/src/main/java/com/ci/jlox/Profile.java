@@ -0,0 +1,177 @@
+package com.ci.jlox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Execution counts per AST node, loop iteration counts and calls per site.
+// Every interpreter thread counts into the same counters, which are
+// LongAdders so threads don't contend on them. Each thread's Profile keeps
+// the counters it has used, so only a node's first run on that thread goes
+// to the shared maps. Nothing is kept per thread beyond that, so finished
+// tasks and generators leave nothing behind, and report() can read the
+// counts while generator threads are still parked.
+final class Profile {
+    private static final class Counter {
+        final String kind;
+        final int line;
+        final LongAdder count = new LongAdder();
+
+        Counter(final String kind, final int line) {
+            this.kind = kind;
+            this.line = line;
+        }
+    }
+
+    // Shared by every thread; AST nodes compare by identity.
+    private final Map<Object, Counter> nodes;
+    private final Map<Stmt.While, Counter> loops;
+    private final Map<Expr.Call, Counter> calls;
+    // This thread's view of the shared maps.
+    private final Map<Object, Counter> localNodes = new IdentityHashMap<>();
+    private final Map<Stmt.While, Counter> localLoops = new IdentityHashMap<>();
+    private final Map<Expr.Call, Counter> localCalls = new IdentityHashMap<>();
+    // Line of the statement being run, for nodes that carry no token.
+    private int line;
+
+    Profile() {
+        nodes = new ConcurrentHashMap<>();
+        loops = new ConcurrentHashMap<>();
+        calls = new ConcurrentHashMap<>();
+    }
+
+    private Profile(final Profile parent) {
+        nodes = parent.nodes;
+        loops = parent.loops;
+        calls = parent.calls;
+    }
+
+    Profile fork() {
+        return new Profile(this);
+    }
+
+    void stmt(final Stmt stmt) {
+        line = count(nodes, localNodes, stmt).line;
+    }
+
+    void expr(final Expr expr) {
+        count(nodes, localNodes, expr);
+    }
+
+    void loop(final Stmt.While stmt) {
+        count(loops, localLoops, stmt);
+    }
+
+    void call(final Expr.Call expr) {
+        count(calls, localCalls, expr);
+    }
+
+    private <K> Counter count(final Map<K, Counter> counters, final Map<K, Counter> local,
+                              final K node) {
+        Counter counter = local.get(node);
+        if (counter == null) {
+            final int known = line(node);
+            final int at = known >= 0 ? known : line;
+            counter = counters.computeIfAbsent(node,
+                    n -> new Counter(n.getClass().getSimpleName(), at));
+            local.put(node, counter);
+        }
+        counter.count.increment();
+        return counter;
+    }
+
+    void report(final PrintStream out, final int top) {
+        final Map<Stmt.While, Long> loopCounts = sums(loops);
+        final Map<Expr.Call, Long> callCounts = sums(calls);
+
+        final Map<Integer, Map<String, Long>> lines = new HashMap<>();
+        nodes.forEach((node, counter) -> lines.computeIfAbsent(counter.line, l -> new HashMap<>())
+                .merge(counter.kind, counter.count.sum(), Long::sum));
+        final List<Map.Entry<Integer, Map<String, Long>>> hot = new ArrayList<>(lines.entrySet());
+        hot.sort(Comparator.comparingLong(
+                (Map.Entry<Integer, Map<String, Long>> e) -> total(e.getValue())).reversed());
+        out.printf("== Hot lines (top %d of %d) ==%n", Math.min(top, hot.size()), hot.size());
+        out.printf("%6s %14s  %s%n", "line", "nodes", "by kind");
+        for (final var entry : hot.subList(0, Math.min(top, hot.size()))) {
+            final List<Map.Entry<String, Long>> kinds = new ArrayList<>(entry.getValue().entrySet());
+            kinds.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            final var breakdown = new StringBuilder();
+            for (final var kind : kinds) {
+                if (!breakdown.isEmpty()) {
+                    breakdown.append(", ");
+                }
+                breakdown.append(kind.getKey()).append(' ').append(kind.getValue());
+            }
+            out.printf("%6d %14d  %s%n", entry.getKey(), total(entry.getValue()), breakdown);
+        }
+
+        final List<Map.Entry<Stmt.While, Long>> hotLoops = new ArrayList<>(loopCounts.entrySet());
+        hotLoops.sort(Map.Entry.<Stmt.While, Long>comparingByValue().reversed());
+        out.printf("== Loops (top %d of %d) ==%n", Math.min(top, hotLoops.size()), hotLoops.size());
+        out.printf("%6s %14s%n", "line", "iterations");
+        for (final var entry : hotLoops.subList(0, Math.min(top, hotLoops.size()))) {
+            out.printf("%6d %14d%n", entry.getKey().keyword.line, entry.getValue());
+        }
+
+        // arity -> {sites, calls}
+        final Map<Integer, long[]> arities = new TreeMap<>();
+        callCounts.forEach((call, count) -> {
+            final long[] row = arities.computeIfAbsent(call.arguments.size(), a -> new long[2]);
+            row[0]++;
+            row[1] += count;
+        });
+        out.println("== Call sites by arity ==");
+        out.printf("%6s %8s %14s%n", "arity", "sites", "calls");
+        arities.forEach((arity, row) -> out.printf("%6d %8d %14d%n", arity, row[0], row[1]));
+        out.flush();
+    }
+
+    private static <K> Map<K, Long> sums(final Map<K, Counter> counters) {
+        final Map<K, Long> sums = new IdentityHashMap<>();
+        counters.forEach((node, counter) -> sums.put(node, counter.count.sum()));
+        return sums;
+    }
+
+    private static long total(final Map<String, Long> kinds) {
+        long total = 0;
+        for (final long count : kinds.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    // The line a node starts on, or -1 when it holds no token.
+    static int line(final Object node) {
+        return switch (node) {
+            case Expr.Assign expr -> expr.name.line;
+            case Expr.Binary expr -> expr.operator.line;
+            case Expr.Call expr -> expr.paren.line;
+            case Expr.Get expr -> expr.name.line;
+            case Expr.Grouping expr -> line(expr.expression);
+            case Expr.Logical expr -> expr.operator.line;
+            case Expr.Set expr -> expr.name.line;
+            case Expr.Super expr -> expr.keyword.line;
+            case Expr.This expr -> expr.keyword.line;
+            case Expr.Unary expr -> expr.operator.line;
+            case Expr.Variable expr -> expr.name.line;
+            case Stmt.Block stmt -> stmt.statements.isEmpty() ? -1 : line(stmt.statements.get(0));
+            case Stmt.Class stmt -> stmt.name.line;
+            case Stmt.Expression stmt -> line(stmt.expression);
+            case Stmt.Function stmt -> stmt.name.line;
+            case Stmt.If stmt -> line(stmt.condition);
+            case Stmt.Print stmt -> line(stmt.expression);
+            case Stmt.Return stmt -> stmt.keyword.line;
+            case Stmt.Var stmt -> stmt.name.line;
+            case Stmt.While stmt -> stmt.keyword.line;
+            case Stmt.Yield stmt -> stmt.keyword.line;
+            default -> -1;
+        };
+    }
+}
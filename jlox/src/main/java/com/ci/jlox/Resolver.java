@@ -1,21 +1,96 @@
 package com.ci.jlox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private record Report(Token token, String message) {
+    }
+
+    // A function body met outside of any other function, resolved after
+    // the rest of the script, in the scopes of its declaration.
+    private record Deferred(Stmt.Function function, FunctionType functionType,
+                            ClassType classType, List<Map<String, Boolean>> scopes,
+                            List<Report> errors) {
+        void resolve(final Interpreter interpreter) {
+            new Resolver(interpreter, errors).resolveBody(function, function.body, functionType,
+                    classType, scopes);
+        }
+    }
+
+    // Fewer bodies than this aren't worth waking the pool for.
+    private static final int PARALLEL_BODIES = 64;
+
     private final Interpreter interpreter;
     private final Stack<Map<String, Boolean>> scopes;
     private FunctionType currFunc = FunctionType.NONE;
+    private ClassType currClass = ClassType.NONE;
+    private Token valueReturn = null;
+    private boolean yields = false;
+    // Where errors go until they can be reported in source order; null to
+    // report them right away.
+    private List<Report> errors;
+    // Set while resolve() walks a script: the bodies it put off, and every
+    // error list in the order its errors would have been found.
+    private List<Deferred> deferred;
+    private List<List<Report>> reports;
 
     public Resolver(final Interpreter interpreter) {
+        this(interpreter, null);
+    }
+
+    private Resolver(final Interpreter interpreter, final List<Report> errors) {
         this.interpreter = interpreter;
+        this.errors = errors;
         scopes = new Stack<>();
     }
 
+    // Function bodies don't affect how anything outside them resolves, so
+    // the ones at the top of the script are resolved last, on the common
+    // fork-join pool when there are enough of them. Errors are held back
+    // and reported in the order a single pass would have found them.
     public void resolve(final List<Stmt> statements) {
+        final var event = new Events.Resolve();
+        event.begin();
+        deferred = new ArrayList<>();
+        reports = new ArrayList<>();
+        errors = new ArrayList<>();
+        reports.add(errors);
+        try {
+            resolveAll(statements);
+            if (deferred.size() >= PARALLEL_BODIES && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                deferred.parallelStream().forEach(body -> body.resolve(interpreter));
+            } else {
+                deferred.forEach(body -> body.resolve(interpreter));
+            }
+            for (final List<Report> list : reports) {
+                for (final Report report : list) {
+                    LoxErr.error(report.token, report.message);
+                }
+            }
+        } finally {
+            event.statements = statements.size();
+            event.bodies = deferred.size();
+            event.commit();
+            deferred = null;
+            reports = null;
+            errors = null;
+        }
+    }
+
+    private void error(final Token token, final String message) {
+        if (errors == null) {
+            LoxErr.error(token, message);
+        } else {
+            errors.add(new Report(token, message));
+        }
+    }
+
+    private void resolveAll(final List<Stmt> statements) {
         for (final var statement : statements) {
             resolve(statement);
         }
@@ -43,7 +118,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
         final var scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
-            LoxErr.error(name,
+            error(name,
                     "Already a variable with this name in this scope.");
         }
         scope.put(name.lexeme, false);
@@ -65,17 +140,87 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
     }
 
+    // Resolves `body`, which the parser skipped, before it becomes the
+    // function's, reports its errors, and returns whether there were any.
+    static boolean resolveLazyBody(final Interpreter interpreter, final Stmt.Function function,
+                                   final List<Stmt> body, final FunctionType functionType,
+                                   final ClassType classType,
+                                   final List<Map<String, Boolean>> declScopes) {
+        final List<Report> bodyErrors = new ArrayList<>();
+        new Resolver(interpreter, bodyErrors).resolveBody(function, body, functionType, classType,
+                declScopes);
+        for (final Report report : bodyErrors) {
+            LoxErr.error(report.token, report.message);
+        }
+        return !bodyErrors.isEmpty();
+    }
+
+    // A body the parser skipped, resolved in the scopes of its declaration.
+    private void resolveBody(final Stmt.Function function, final List<Stmt> body,
+                             final FunctionType functionType, final ClassType classType,
+                             final List<Map<String, Boolean>> declScopes) {
+        scopes.addAll(declScopes);
+        currClass = classType;
+        resolveParsedFunction(function, body, functionType);
+    }
+
     private void resolveFunction(final Stmt.Function function, FunctionType functionType) {
+        if (function.lazy != null && !function.lazy.isParsed()) {
+            function.lazy.defer(interpreter, copyScopes(), currClass, functionType);
+            return;
+        }
+        if (deferred != null) {
+            final List<Report> bodyErrors = new ArrayList<>();
+            deferred.add(new Deferred(function, functionType, currClass, copyScopes(), bodyErrors));
+            reports.add(bodyErrors);
+            errors = new ArrayList<>();
+            reports.add(errors);
+            return;
+        }
+        resolveParsedFunction(function, function.body, functionType);
+    }
+
+    // Names declared after this point stay out of a deferred body's reach,
+    // as they would if it were resolved now.
+    private List<Map<String, Boolean>> copyScopes() {
+        final List<Map<String, Boolean>> copy = new ArrayList<>(scopes.size());
+        for (final var scope : scopes) {
+            copy.add(new HashMap<>(scope));
+        }
+        return copy;
+    }
+
+    private void resolveParsedFunction(final Stmt.Function function, final List<Stmt> body,
+                                       FunctionType functionType) {
         final FunctionType enclosingFunction = currFunc;
+        final Token enclosingReturn = valueReturn;
+        final boolean enclosingYields = yields;
         currFunc = functionType;
+        valueReturn = null;
+        yields = false;
         beginScope();
+        if (functionType == FunctionType.METHOD || functionType == FunctionType.INITIALIZER) {
+            // Bound alongside the parameters, not in a scope of its own.
+            scopes.peek().put("this", true);
+        }
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
-        resolve(function.body);
+        resolveAll(body);
         endScope();
+        if (yields) {
+            if (functionType == FunctionType.INITIALIZER) {
+                error(function.name, "Can't yield from an initializer.");
+            }
+            function.generator = true;
+            if (valueReturn != null) {
+                error(valueReturn, "Can't return a value from a generator.");
+            }
+        }
         currFunc = enclosingFunction;
+        valueReturn = enclosingReturn;
+        yields = enclosingYields;
     }
 
     @Override
@@ -132,6 +277,30 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        if (currClass == ClassType.NONE) {
+            error(expr.keyword,
+                    "Can't use 'super' outside of a class.");
+        } else if (currClass != ClassType.SUBCLASS) {
+            error(expr.keyword,
+                    "Can't use 'super' in a class with no superclass.");
+        }
+        resolveLocal(expr, expr.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        if (currClass == ClassType.NONE) {
+            error(expr.keyword,
+                    "Can't use 'this' outside of a class.");
+            return null;
+        }
+        resolveLocal(expr, expr.keyword);
+        return null;
+    }
+
     @Override
     public Void visitUnaryExpr(Expr.Unary expr) {
         resolve(expr.right);
@@ -142,7 +311,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     public Void visitVariableExpr(Expr.Variable expr) {
         if (!scopes.isEmpty() &&
                 scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            LoxErr.error(expr.name,
+            error(expr.name,
                     "Can't read local variable in its own initializer.");
         }
         resolveLocal(expr, expr.name);
@@ -151,20 +320,57 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        if (!declaresNames(stmt.statements)) {
+            // Nothing to bind, so the block shares the enclosing scope and
+            // nested blocks like it collapse into that same scope as well.
+            stmt.scopeless = true;
+            resolveAll(stmt.statements);
+            return null;
+        }
         beginScope();
-        resolve(stmt.statements);
+        resolveAll(stmt.statements);
         endScope();
         return null;
     }
 
+    private static boolean declaresNames(final List<Stmt> statements) {
+        for (final var statement : statements) {
+            if (statement instanceof Stmt.Var ||
+                    statement instanceof Stmt.Function ||
+                    statement instanceof Stmt.Class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
+        final ClassType enclosingClass = currClass;
+        currClass = ClassType.CLASS;
         declare(stmt.name);
         define(stmt.name);
+        if (stmt.superclass != null) {
+            if (stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
+                error(stmt.superclass.name,
+                        "A class can't inherit from itself.");
+            }
+            currClass = ClassType.SUBCLASS;
+            resolve(stmt.superclass);
+            beginScope();
+            scopes.peek().put("super", true);
+        }
         for (Stmt.Function method : stmt.methods) {
-            final var declaration = FunctionType.METHOD;
+            var declaration = FunctionType.METHOD;
+            if (method.name.lexeme.equals("init")) {
+                declaration = FunctionType.INITIALIZER;
+            }
             resolveFunction(method, declaration);
         }
+        if (stmt.superclass != null) {
+            endScope();
+        }
+        currClass = enclosingClass;
         return null;
     }
 
@@ -201,9 +407,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currFunc == FunctionType.NONE) {
-            LoxErr.error(stmt.keyword, "Can't return from top-level code.");
+            error(stmt.keyword, "Can't return from top-level code.");
         }
         if (stmt.value != null) {
+            if (currFunc == FunctionType.INITIALIZER) {
+                error(stmt.keyword,
+                        "Can't return a value from an initializer.");
+            }
+            if (valueReturn == null) {
+                valueReturn = stmt.keyword;
+            }
             resolve(stmt.value);
         }
         return null;
@@ -225,11 +438,16 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         resolve(stmt.body);
         return null;
     }
-}
 
-
-enum FunctionType {
-    NONE,
-    FUNCTION,
-    METHOD,
-}
\ No newline at end of file
+    @Override
+    public Void visitYieldStmt(Stmt.Yield stmt) {
+        if (currFunc == FunctionType.NONE) {
+            error(stmt.keyword, "Can't yield from top-level code.");
+        }
+        yields = true;
+        if (stmt.value != null) {
+            resolve(stmt.value);
+        }
+        return null;
+    }
+}
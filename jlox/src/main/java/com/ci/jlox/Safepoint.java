@@ -0,0 +1,54 @@
+package com.ci.jlox;
+
+// Execution limits for an interpreter: a step budget, a wall-clock deadline
+// and how often to yield the carrier to other virtual threads. A step is a
+// loop iteration or a call. The interpreter counts steps down from a grant
+// and only calls poll() when the grant runs out, so without limits the
+// grant never runs out and all that is left is a decrement and a compare.
+final class Safepoint {
+    static final Safepoint NONE = new Safepoint(0, 0, 0);
+
+    // How many steps may pass between clock reads when a deadline is set.
+    private static final long CLOCK_INTERVAL = 1024;
+
+    private final long maxSteps;
+    private final long deadline;
+    private final long yieldEvery;
+
+    Safepoint(final long maxSteps, final long deadline, final long yieldEvery) {
+        this.maxSteps = maxSteps;
+        this.deadline = deadline;
+        this.yieldEvery = yieldEvery;
+    }
+
+    // `steps` is the total counted so far, including the step that ran the
+    // grant out; returns the next grant.
+    long poll(final Token where, final long steps) {
+        if (maxSteps > 0 && steps > maxSteps) {
+            throw new RuntimeError(where, "Step budget of " + maxSteps + " exceeded.");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new RuntimeError(where, "Time limit exceeded.");
+        }
+        if (yieldEvery > 0 && Thread.currentThread().isVirtual()) {
+            Thread.yield();
+        }
+        return grant(steps);
+    }
+
+    // A budget of N allows N steps, so the grant runs out on the step after
+    // the last one allowed.
+    long grant(final long steps) {
+        long grant = Long.MAX_VALUE;
+        if (maxSteps > 0) {
+            grant = Math.min(grant, maxSteps - steps + 1);
+        }
+        if (deadline != 0) {
+            grant = Math.min(grant, CLOCK_INTERVAL);
+        }
+        if (yieldEvery > 0) {
+            grant = Math.min(grant, yieldEvery);
+        }
+        return grant;
+    }
+}
@@ -26,6 +26,7 @@ public class Scanner {
         keywords.put("true",   TokenType.TRUE);
         keywords.put("var",    TokenType.VAR);
         keywords.put("while",  TokenType.WHILE);
+        keywords.put("yield",  TokenType.YIELD);
     }
 
     private final String src;
@@ -206,11 +207,16 @@ public class Scanner {
     }
 
     List<Token> scanTokens() {
+        final var event = new Events.Scan();
+        event.begin();
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
         tokens.add(new Token(TokenType.EOF, "", null, line));
+        event.sourceLength = src.length();
+        event.tokens = tokens.size();
+        event.commit();
         return tokens;
     }
 }
\ No newline at end of file
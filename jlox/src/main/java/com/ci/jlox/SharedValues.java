@@ -0,0 +1,38 @@
+package com.ci.jlox;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Helpers for the name -> value maps of Environment and LoxInstance once
+// tasks are running. Those maps are then ConcurrentHashMaps, which read
+// without locking and lock single bins on update, so unrelated variables
+// and fields never contend. ConcurrentHashMap rejects null, so nil is
+// stored as NIL.
+final class SharedValues {
+    private static final Object NIL = new Object();
+
+    private SharedValues() {
+    }
+
+    static Object mask(final Object value) {
+        return (value == null) ? NIL : value;
+    }
+
+    static Object unmask(final Object value) {
+        return (value == NIL) ? null : value;
+    }
+
+    static Map<String, Object> create() {
+        return new ConcurrentHashMap<>();
+    }
+
+    static Map<String, Object> copyOf(final Map<String, Object> values) {
+        final var shared = new ConcurrentHashMap<String, Object>(Math.max(values.size(), 16));
+        values.forEach((name, value) -> shared.put(name, mask(value)));
+        return shared;
+    }
+
+    static boolean isShared(final Map<String, Object> values) {
+        return values instanceof ConcurrentHashMap;
+    }
+}
@@ -0,0 +1,405 @@
+package com.ci.jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Runs the AST without recursing on the Java stack. Pending work lives in
+// the parallel `work`/`ops` arrays: an EVAL or EXEC entry for a node that
+// still has to run, or an entry that finishes a node once its operands are
+// on the `values` stack. A call to a Lox function pushes a frame marker
+// holding the caller's environment instead of calling into LoxFunction, so
+// Lox recursion only grows these arrays. Depth is bounded by `maxFrames`
+// rather than by the thread's stack size, which makes deep recursion
+// possible on small virtual-thread stacks.
+final class StackMachine {
+    private static final int EVAL = 0;
+    private static final int EXEC = 1;
+    private static final int POP = 2;
+    private static final int PRINT = 3;
+    private static final int DEFINE = 4;
+    private static final int BRANCH = 5;
+    private static final int LOOP_TEST = 6;
+    private static final int LOOP_NEXT = 7;
+    private static final int RETURN = 8;
+    private static final int FRAME = 9;
+    private static final int RESTORE = 10;
+    private static final int UNARY = 11;
+    private static final int BINARY = 12;
+    private static final int LOGICAL = 13;
+    private static final int ASSIGN = 14;
+    private static final int GET = 15;
+    private static final int SET_OBJECT = 16;
+    private static final int SET = 17;
+    private static final int CALL = 18;
+    private static final int YIELD = 19;
+    private static final int CONSTRUCTED = 20;
+    private static final int INVOKE_TARGET = 21;
+    private static final int INVOKE = 22;
+
+    private final Interpreter interpreter;
+    private final int maxFrames;
+
+    private Object[] work = new Object[64];
+    private int[] ops = new int[64];
+    private int workTop;
+    private Object[] values = new Object[64];
+    private int valueTop;
+    private int frames;
+
+    StackMachine(final Interpreter interpreter, final int maxFrames) {
+        this.interpreter = interpreter;
+        this.maxFrames = maxFrames;
+    }
+
+    int maxFrames() {
+        return maxFrames;
+    }
+
+    int frames() {
+        return frames;
+    }
+
+    void execute(final List<Stmt> statements) {
+        final int base = workTop;
+        pushStatements(statements);
+        run(base);
+    }
+
+    // Entry point for natives and generators that call a Lox function.
+    Object call(final LoxFunction function, final List<Object> args,
+                final LoxInstance receiver, final Token where) {
+        final int base = workTop;
+        enter(function, args, receiver, where);
+        run(base);
+        return values[--valueTop];
+    }
+
+    private void run(final int base) {
+        final int valueBase = valueTop;
+        final int frameBase = frames;
+        final Environment environment = interpreter.environment;
+        try {
+            while (workTop > base) {
+                step();
+            }
+        } catch (RuntimeException e) {
+            Arrays.fill(work, base, workTop, null);
+            Arrays.fill(values, valueBase, valueTop, null);
+            workTop = base;
+            valueTop = valueBase;
+            frames = frameBase;
+            interpreter.environment = environment;
+            throw e;
+        }
+    }
+
+    private void step() {
+        final Object node = work[--workTop];
+        final int op = ops[workTop];
+        work[workTop] = null;
+        switch (op) {
+            case EVAL -> {
+                if (interpreter.profile != null) {
+                    interpreter.profile.expr((Expr) node);
+                }
+                eval((Expr) node);
+            }
+            case EXEC -> {
+                if (interpreter.profile != null) {
+                    interpreter.profile.stmt((Stmt) node);
+                }
+                if (interpreter.coverage != null) {
+                    interpreter.coverage.hit((Stmt) node);
+                }
+                if (interpreter.debugger != null) {
+                    interpreter.debugger.statement((Stmt) node);
+                }
+                exec((Stmt) node);
+            }
+            case POP -> pop();
+            case PRINT -> interpreter.print(pop());
+            case DEFINE -> interpreter.environment.define(((Stmt.Var) node).name.lexeme, pop());
+            case BRANCH -> {
+                final var stmt = (Stmt.If) node;
+                final boolean taken = Interpreter.isTruthy(pop());
+                if (interpreter.coverage != null) {
+                    interpreter.coverage.branch(stmt, taken);
+                }
+                if (taken) {
+                    push(stmt.thenBranch, EXEC);
+                } else if (stmt.elseBranch != null) {
+                    push(stmt.elseBranch, EXEC);
+                }
+            }
+            case LOOP_TEST -> {
+                final var stmt = (Stmt.While) node;
+                final boolean taken = Interpreter.isTruthy(pop());
+                if (interpreter.coverage != null) {
+                    interpreter.coverage.branch(stmt, taken);
+                }
+                if (taken) {
+                    push(stmt, LOOP_NEXT);
+                    push(stmt.body, EXEC);
+                }
+            }
+            case LOOP_NEXT -> {
+                final var stmt = (Stmt.While) node;
+                if (interpreter.profile != null) {
+                    interpreter.profile.loop(stmt);
+                }
+                interpreter.safepoint(stmt.keyword);
+                push(stmt, LOOP_TEST);
+                push(stmt.condition, EVAL);
+            }
+            case RETURN -> unwind(pop());
+            case FRAME -> {
+                interpreter.environment = (Environment) node;
+                frames--;
+                pushValue(null);
+            }
+            case RESTORE -> interpreter.environment = (Environment) node;
+            case UNARY -> pushValue(interpreter.unary((Expr.Unary) node, pop()));
+            case BINARY -> {
+                final Object right = pop();
+                pushValue(interpreter.binary((Expr.Binary) node, pop(), right));
+            }
+            case LOGICAL -> {
+                final var expr = (Expr.Logical) node;
+                final boolean truthy = Interpreter.isTruthy(values[valueTop - 1]);
+                if (truthy != (expr.operator.type == TokenType.OR)) {
+                    pop();
+                    push(expr.right, EVAL);
+                }
+            }
+            case ASSIGN -> pushValue(interpreter.assign((Expr.Assign) node, pop()));
+            case GET -> pushValue(interpreter.get((Expr.Get) node, pop()));
+            case SET_OBJECT -> {
+                final var expr = (Expr.Set) node;
+                interpreter.settable(expr, values[valueTop - 1]);
+                push(expr, SET);
+                push(expr.value, EVAL);
+            }
+            case SET -> {
+                final var expr = (Expr.Set) node;
+                final Object value = pop();
+                ((LoxInstance) pop()).set(expr.name, value);
+                pushValue(value);
+            }
+            case CALL -> {
+                final var expr = (Expr.Call) node;
+                final List<Object> args = popArgs(expr);
+                call(expr, pop(), null, args);
+            }
+            case INVOKE_TARGET -> {
+                final var expr = (Expr.Call) node;
+                final var get = (Expr.Get) expr.callee;
+                final Object object = pop();
+                final LoxFunction method = interpreter.method(expr, get, object);
+                // The receiver slot stays nil unless the call is fused.
+                pushValue(method == null ? null : object);
+                pushValue(method == null ? interpreter.get(get, object) : method);
+                push(expr, INVOKE);
+                pushArgs(expr);
+            }
+            case INVOKE -> {
+                final var expr = (Expr.Call) node;
+                final List<Object> args = popArgs(expr);
+                final Object callee = pop();
+                call(expr, callee, (LoxInstance) pop(), args);
+            }
+            case YIELD -> interpreter.yieldValue(pop());
+            // Below an initializer's frame: its result is always the instance.
+            case CONSTRUCTED -> values[valueTop - 1] = node;
+            default -> throw new IllegalStateException("Unknown op " + op);
+        }
+    }
+
+    private void eval(final Expr expr) {
+        switch (expr) {
+            case Expr.Literal literal -> pushValue(literal.value);
+            case Expr.This self -> pushValue(interpreter.lookUpVariable(self.keyword, self));
+            case Expr.Variable variable ->
+                    pushValue(interpreter.lookUpVariable(variable.name, variable));
+            case Expr.Grouping grouping -> push(grouping.expression, EVAL);
+            case Expr.Unary unary -> {
+                push(unary, UNARY);
+                push(unary.right, EVAL);
+            }
+            case Expr.Binary binary -> {
+                push(binary, BINARY);
+                push(binary.right, EVAL);
+                push(binary.left, EVAL);
+            }
+            case Expr.Logical logical -> {
+                push(logical, LOGICAL);
+                push(logical.left, EVAL);
+            }
+            case Expr.Assign assign -> {
+                push(assign, ASSIGN);
+                push(assign.value, EVAL);
+            }
+            case Expr.Get get -> {
+                push(get, GET);
+                push(get.object, EVAL);
+            }
+            case Expr.Set set -> {
+                push(set, SET_OBJECT);
+                push(set.object, EVAL);
+            }
+            case Expr.Call call -> {
+                if (call.site.invoke) {
+                    push(call, INVOKE_TARGET);
+                    push(((Expr.Get) call.callee).object, EVAL);
+                } else {
+                    push(call, CALL);
+                    pushArgs(call);
+                    push(call.callee, EVAL);
+                }
+            }
+            // Already counted as this node; don't count it again.
+            default -> pushValue(expr.accept(interpreter));
+        }
+    }
+
+    private void exec(final Stmt stmt) {
+        switch (stmt) {
+            case Stmt.Expression expression -> {
+                push(expression, POP);
+                push(expression.expression, EVAL);
+            }
+            case Stmt.Print print -> {
+                push(print, PRINT);
+                push(print.expression, EVAL);
+            }
+            case Stmt.Var var -> {
+                push(var, DEFINE);
+                pushExpr(var.initializer);
+            }
+            case Stmt.Block block -> {
+                if (!block.scopeless) {
+                    push(interpreter.environment, RESTORE);
+                    interpreter.environment = interpreter.blockEnvironment(block);
+                }
+                pushStatements(block.statements);
+            }
+            case Stmt.If ifStmt -> {
+                push(ifStmt, BRANCH);
+                push(ifStmt.condition, EVAL);
+            }
+            case Stmt.While whileStmt -> {
+                push(whileStmt, LOOP_TEST);
+                push(whileStmt.condition, EVAL);
+            }
+            case Stmt.Return returnStmt -> {
+                push(returnStmt, RETURN);
+                pushExpr(returnStmt.value);
+            }
+            case Stmt.Yield yieldStmt -> {
+                push(yieldStmt, YIELD);
+                pushExpr(yieldStmt.value);
+            }
+            // Declarations don't evaluate any subexpressions.
+            default -> stmt.accept(interpreter);
+        }
+    }
+
+    private void pushArgs(final Expr.Call expr) {
+        for (int i = expr.arguments.size() - 1; i >= 0; i--) {
+            push(expr.arguments.get(i), EVAL);
+        }
+    }
+
+    private List<Object> popArgs(final Expr.Call expr) {
+        final int argCount = expr.arguments.size();
+        final List<Object> args = new ArrayList<>(argCount);
+        for (int i = valueTop - argCount; i < valueTop; i++) {
+            args.add(values[i]);
+        }
+        Arrays.fill(values, valueTop - argCount, valueTop, null);
+        valueTop -= argCount;
+        return args;
+    }
+
+    private void call(final Expr.Call expr, final Object callee,
+                      final LoxInstance receiver, final List<Object> args) {
+        final LoxCallable func = interpreter.callable(expr, callee, args.size());
+        final Inline inline = expr.site.inline(func);
+        if (inline != null) {
+            pushValue(inline.apply(interpreter, receiver, args));
+        } else if (func instanceof LoxFunction function && !function.isGenerator()) {
+            enter(function, args, receiver, expr.paren);
+        } else if (receiver != null) {
+            pushValue(((LoxFunction) func).call(interpreter, args, receiver));
+        } else if (func instanceof LoxBoundMethod bound && !bound.method.isGenerator()) {
+            enter(bound.method, args, bound.receiver, expr.paren);
+        } else if (func instanceof LoxClass klass && klass.initializer() != null &&
+                !klass.initializer().isGenerator()) {
+            enter(klass.initializer(), args, klass.instantiate(interpreter, expr), expr.paren);
+        } else {
+            pushValue(interpreter.call(expr, func, args));
+        }
+    }
+
+    private void enter(final LoxFunction function, final List<Object> args,
+                       final LoxInstance receiver, final Token where) {
+        if (frames == maxFrames) {
+            throw new RuntimeError(where, "Stack overflow.");
+        }
+        frames++;
+        if (function.isInitializer()) {
+            push(receiver, CONSTRUCTED);
+        }
+        push(interpreter.environment, FRAME);
+        interpreter.environment = function.frame(interpreter, args, receiver);
+        pushStatements(function.body());
+    }
+
+    // Drops everything the returning function still had pending, up to and
+    // including its frame marker.
+    private void unwind(final Object value) {
+        while (ops[--workTop] != FRAME) {
+            work[workTop] = null;
+        }
+        interpreter.environment = (Environment) work[workTop];
+        work[workTop] = null;
+        frames--;
+        pushValue(value);
+    }
+
+    private void pushStatements(final List<Stmt> statements) {
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            push(statements.get(i), EXEC);
+        }
+    }
+
+    private void pushExpr(final Expr expr) {
+        if (expr == null) {
+            pushValue(null);
+        } else {
+            push(expr, EVAL);
+        }
+    }
+
+    private void push(final Object node, final int op) {
+        if (workTop == work.length) {
+            work = Arrays.copyOf(work, workTop * 2);
+            ops = Arrays.copyOf(ops, workTop * 2);
+        }
+        work[workTop] = node;
+        ops[workTop++] = op;
+    }
+
+    private void pushValue(final Object value) {
+        if (valueTop == values.length) {
+            values = Arrays.copyOf(values, valueTop * 2);
+        }
+        values[valueTop++] = value;
+    }
+
+    private Object pop() {
+        final Object value = values[--valueTop];
+        values[valueTop] = null;
+        return value;
+    }
+}
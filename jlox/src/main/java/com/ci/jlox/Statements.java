@@ -0,0 +1,40 @@
+package com.ci.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Every numbered statement of a program, nested ones included, in the order
+// they appear: what coverage reports on and breakpoints attach to.
+final class Statements {
+    private Statements() {
+    }
+
+    static List<Stmt> all(final List<Stmt> program) {
+        final List<Stmt> all = new ArrayList<>();
+        for (final Stmt stmt : program) {
+            collect(stmt, all);
+        }
+        return all;
+    }
+
+    private static void collect(final Stmt stmt, final List<Stmt> into) {
+        if (stmt == null) {
+            return;
+        }
+        if (stmt.id >= 0) {
+            into.add(stmt);
+        }
+        switch (stmt) {
+            case Stmt.Block block -> block.statements.forEach(s -> collect(s, into));
+            case Stmt.Class klass -> klass.methods.forEach(m -> m.body.forEach(s -> collect(s, into)));
+            case Stmt.Function function -> function.body.forEach(s -> collect(s, into));
+            case Stmt.If ifStmt -> {
+                collect(ifStmt.thenBranch, into);
+                collect(ifStmt.elseBranch, into);
+            }
+            case Stmt.While whileStmt -> collect(whileStmt.body, into);
+            default -> {
+            }
+        }
+    }
+}
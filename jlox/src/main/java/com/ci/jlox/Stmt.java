@@ -13,6 +13,7 @@ abstract class Stmt {
     R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
     R visitWhileStmt(While stmt);
+    R visitYieldStmt(Yield stmt);
   }
   public static class Block extends Stmt {
     Block(List<Stmt> statements) {
@@ -25,10 +26,12 @@ abstract class Stmt {
     }
 
     final List<Stmt> statements;
+    boolean scopeless;
   }
   public static class Class extends Stmt {
-    Class(Token name, List<Stmt.Function> methods) {
+    Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
       this.name = name;
+      this.superclass = superclass;
       this.methods = methods;
     }
 
@@ -38,6 +41,7 @@ abstract class Stmt {
     }
 
     final Token name;
+    final Expr.Variable superclass;
     final List<Stmt.Function> methods;
   }
   public static class Expression extends Stmt {
@@ -66,7 +70,9 @@ abstract class Stmt {
 
     final Token name;
     final List<Token> params;
-    final List<Stmt> body;
+    volatile List<Stmt> body;
+    LazyBody lazy;
+    boolean generator;
   }
   public static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -125,7 +131,8 @@ abstract class Stmt {
     final Expr initializer;
   }
   public static class While extends Stmt {
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+      this.keyword = keyword;
       this.condition = condition;
       this.body = body;
     }
@@ -135,9 +142,28 @@ abstract class Stmt {
       return visitor.visitWhileStmt(this);
     }
 
+    final Token keyword;
     final Expr condition;
     final Stmt body;
   }
+  public static class Yield extends Stmt {
+    Yield(Token keyword, Expr value) {
+      this.keyword = keyword;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitYieldStmt(this);
+    }
+
+    final Token keyword;
+    final Expr value;
+  }
+
+  int id = -1;
+  int line;
+  boolean breakpoint;
 
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -9,19 +9,30 @@ import java.util.List;
 public class GenerateAst {
     private static void defineType(
             final PrintWriter writer, final String baseName,
-            final String className, final String fieldList
+            final String className, final String fieldList,
+            final String stateList
     ) {
         writer.println("  public static class " + className + " extends " + baseName + " {");
 
-        // Constructor
-        writer.println("    " + className + "(" + fieldList + ") {");
+        // Constructor. A `volatile` field is set here like the others but
+        // stays assignable, for state that is published once it's complete.
+        writer.println("    " + className + "(" + fieldList.replace("volatile ", "") + ") {");
 
         final String[] fields = fieldList.split(", ");
         for (final var field : fields) {
-            final var name = field.split(" ")[1];
+            final var name = field.substring(field.lastIndexOf(' ') + 1);
             // FIX 1: Assign 'name', not the whole 'field' string
             writer.println("      this." + name + " = " + name + ";");
         }
+        // State given as `Type name = init` is made once here, from the fields.
+        if (stateList != null) {
+            for (final var field : stateList.split(", ")) {
+                final String[] init = field.split(" = ", 2);
+                if (init.length == 2) {
+                    writer.println("      this." + init[0].split(" ")[1] + " = " + init[1] + ";");
+                }
+            }
+        }
         writer.println("    }");
 
         writer.println();
@@ -35,7 +46,14 @@ public class GenerateAst {
         writer.println();
         for (final var field : fields) {
             // FIX 2: Generate a field declaration, not a method stub
-            writer.println("    final " + field + ";");
+            writer.println("    " + (field.startsWith("volatile ") ? "" : "final ") + field + ";");
+        }
+        // Mutable per-node state filled in after parsing, e.g. call-site caches.
+        if (stateList != null) {
+            for (final var field : stateList.split(", ")) {
+                final String[] init = field.split(" = ", 2);
+                writer.println("    " + ((init.length == 2) ? "final " + init[0] : field) + ";");
+            }
         }
 
         writer.println("  }");
@@ -56,7 +74,7 @@ public class GenerateAst {
 
     private static void defineAst(
             final String outDir, final String baseName,
-            final List<String> types
+            final String baseState, final List<String> types
     ) throws IOException {
         final String path = outDir + '/' + baseName + ".java";
         var writer = new PrintWriter(path, StandardCharsets.UTF_8);
@@ -71,9 +89,19 @@ public class GenerateAst {
         defineVisitor(writer, baseName, types);
 
         for (final var type : types) {
-            final String className = type.split(":")[0].trim();
-            final String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            final String[] parts = type.split(":");
+            final String className = parts[0].trim();
+            final String fields = parts[1].trim();
+            final String state = (parts.length > 2) ? parts[2].trim() : null;
+            defineType(writer, baseName, className, fields, state);
+        }
+
+        // Mutable state every node carries, filled in by the parser.
+        if (baseState != null) {
+            writer.println();
+            for (final var field : baseState.split(", ")) {
+                writer.println("  " + field + ";");
+            }
         }
 
         // The base accept() method.
@@ -91,30 +119,39 @@ public class GenerateAst {
         }
         final String outDir = args[0];
         System.out.println("Generating " + outDir + " ...");
-        defineAst(outDir, "Expr", Arrays.asList(
+        defineAst(outDir, "Expr", null, Arrays.asList(
                 "Assign   : Token name, Expr value",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Call     : Expr callee, Token paren, List<Expr> arguments" +
+                        " : CallSite site = new CallSite(callee instanceof Expr.Get)",
                 "Get      : Expr object, Token name",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Set      : Expr object, Token name, Expr value",
+                "Super    : Token keyword, Token method",
+                "This     : Token keyword",
                 "Unary    : Token operator, Expr right",
                 "Variable : Token name"
         ));
-        defineAst(outDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, List<Stmt.Function> methods",
+        // Statements are numbered for coverage and flagged for breakpoints.
+        // The resolver marks blocks that can run in the enclosing scope and
+        // functions whose bodies yield. A lazily parsed function body is
+        // swapped in whole on its first call.
+        defineAst(outDir, "Stmt", "int id = -1, int line, boolean breakpoint", Arrays.asList(
+                "Block      : List<Stmt> statements : boolean scopeless",
+                "Class      : Token name, Expr.Variable superclass," +
+                        " List<Stmt.Function> methods",
                 "Expression : Expr expression",
                 "Function   : Token name, List<Token> params," +
-                        " List<Stmt> body",
+                        " volatile List<Stmt> body : LazyBody lazy, boolean generator",
                 "If         : Expr condition, Stmt thenBranch," +
                         " Stmt elseBranch",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
                 "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
+                "While      : Token keyword, Expr condition, Stmt body",
+                "Yield      : Token keyword, Expr value"
         ));
     }
 }
\ No newline at end of file